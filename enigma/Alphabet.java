@@ -1,6 +1,6 @@
 package enigma;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 import static enigma.EnigmaException.*;
 
@@ -8,73 +8,86 @@ import static enigma.EnigmaException.*;
 
 /**
  * An alphabet of encodable characters.  Provides a mapping from characters
- * to and from indices into the alphabet.
+ * to and from indices into the alphabet.  The mapping is held in a dense
+ * table covering the range of characters between the smallest and largest
+ * member, plus an index-to-character array, so that every lookup is a
+ * bounds check and an array access.
  *
  * @author Melissa Ly
  */
 class Alphabet {
 
-    /**
-     * alphabet of encodable characters.
-     */
-    private Alphabet _alphabet;
-    /**
-     * Hashmap to store characters and their corresponding indices.
-     */
-    private HashMap<Character, Integer> _index;
-    /**
-     * Hashmap to store indexes and their corresponding characters.
-     */
-    private HashMap<Integer, Character> character;
-
-    /** String for characters. */
-    private String _chars;
-
     /**
      * A new alphabet containing CHARS.  Character number #k has index
      * K (numbering from 0). No character may be duplicated.
      */
     Alphabet(String chars) {
-        _chars = chars;
-        if (_chars.length() == 0) {
+        if (chars.length() == 0) {
             throw new EnigmaException("No alphabet inputs");
         }
-        HashMap<Character, Integer> map = new HashMap<>();
-        for (int i = 0; i < chars.length(); i++) {
-            char c = chars.charAt(i);
-            if ((c != '*') && (c != '(')
-                    && (c != ')')
-                    && (c != ' ') && (!map.containsKey(c))) {
-                if (Character.isUpperCase(c)) {
-                    map.put(c, i);
-                } else {
-                    c = Character.toUpperCase(c);
-                    map.put(c, i);
-                }
-            } else {
+        _chars = chars.toCharArray();
+        char lo = Character.MAX_VALUE, hi = Character.MIN_VALUE;
+        for (char c : _chars) {
+            if (c == '*' || c == '(' || c == ')'
+                    || Character.isWhitespace(c)) {
                 throw new EnigmaException("alphabet has illegal characters");
             }
+            lo = (char) Math.min(lo, c);
+            hi = (char) Math.max(hi, c);
         }
-        _index = map;
-        character = new HashMap<>();
-        for (char c : _index.keySet()) {
-            character.put(_index.get(c), c);
+        _first = lo;
+        _index = new char[hi - lo + 1];
+        Arrays.fill(_index, ABSENT);
+        for (int i = 0; i < _chars.length; i += 1) {
+            int k = _chars[i] - _first;
+            if (_index[k] != ABSENT) {
+                throw new EnigmaException("alphabet has duplicate characters");
+            }
+            _index[k] = (char) i;
         }
     }
 
+    /**
+     * Return the alphabet of the consecutive characters FIRST through
+     * LAST, in order.  For example, range('\u0100', '\u01ff') has 256
+     * members and so can stand for the values of a byte.
+     */
+    static Alphabet range(char first, char last) {
+        if (last < first) {
+            throw error("empty alphabet range");
+        }
+        char[] chars = new char[last - first + 1];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = (char) (first + i);
+        }
+        return new Alphabet(new String(chars));
+    }
 
     /**
      * Returns the size of the alphabet.
      */
     int size() {
-        return character.size();
+        return _chars.length;
     }
 
     /**
      * Returns true if C is in this alphabet.
      */
     boolean contains(char c) {
-        return character.containsValue(c);
+        return lookup(c) >= 0;
+    }
+
+    /**
+     * Returns true iff some member of this alphabet is a lower-case
+     * letter, so that case distinguishes characters.
+     */
+    boolean hasLowerCase() {
+        for (int i = 0; i < size(); i += 1) {
+            if (Character.isLowerCase(toChar(i))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -82,8 +95,8 @@ class Alphabet {
      * 0 <= INDEX < size().
      */
     char toChar(int index) {
-        if (0 <= index && index < size()) {
-            return character.get(index);
+        if (0 <= index && index < _chars.length) {
+            return _chars[index];
         } else {
             throw new EnigmaException("Index out of bounds");
         }
@@ -93,10 +106,69 @@ class Alphabet {
      * Returns the index of character C, which must be in the alphabet.
      */
     int toInt(char c) {
-        if (contains(c)) {
-            return _index.get(c);
-        } else {
-            throw new EnigmaException("Character s not in alphabet");
+        int i = lookup(c);
+        if (i < 0) {
+            throw error("character %c not in alphabet", c);
+        }
+        return i;
+    }
+
+    /** Returns the indices of the characters of S, all of which must be
+     *  in the alphabet. */
+    int[] toInts(CharSequence s) {
+        int[] result = new int[s.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = toInt(s.charAt(i));
+        }
+        return result;
+    }
+
+    /** Store the indices of the LEN characters of SRC starting at SRCPOS
+     *  into DEST starting at DESTPOS.  All the characters must be in the
+     *  alphabet. */
+    void toInts(char[] src, int srcPos, int[] dest, int destPos, int len) {
+        for (int i = 0; i < len; i += 1) {
+            dest[destPos + i] = toInt(src[srcPos + i]);
         }
     }
+
+    /** Returns the characters whose indices are INDICES as a String. */
+    String toChars(int[] indices) {
+        char[] result = new char[indices.length];
+        toChars(indices, 0, result, 0, indices.length);
+        return new String(result);
+    }
+
+    /** Store the characters numbered by the LEN indices of SRC starting at
+     *  SRCPOS into DEST starting at DESTPOS. */
+    void toChars(int[] src, int srcPos, char[] dest, int destPos, int len) {
+        for (int i = 0; i < len; i += 1) {
+            dest[destPos + i] = toChar(src[srcPos + i]);
+        }
+    }
+
+    /** Returns the index of C, or -1 if C is not in this alphabet. */
+    private int lookup(char c) {
+        int k = c - _first;
+        if (k < 0 || k >= _index.length) {
+            return -1;
+        }
+        int i = _index[k];
+        return i == ABSENT ? -1 : i;
+    }
+
+    /** My characters, in index order. */
+    private final char[] _chars;
+
+    /** The smallest character in the alphabet. */
+    private final char _first;
+
+    /** _index[c - _first] is the index of character c, or ABSENT if c is
+     *  not in the alphabet. */
+    private final char[] _index;
+
+    /** Marks characters not in the alphabet in _index.  Never a valid
+     *  index, since an alphabet cannot contain every char (whitespace is
+     *  excluded). */
+    private static final char ABSENT = Character.MAX_VALUE;
 }
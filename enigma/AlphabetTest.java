@@ -0,0 +1,76 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Melissa Ly
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testCustomAlphabet() {
+        Alphabet alpha = new Alphabet("z9a-.");
+        assertEquals(5, alpha.size());
+        assertEquals(0, alpha.toInt('z'));
+        assertEquals(1, alpha.toInt('9'));
+        assertEquals(4, alpha.toInt('.'));
+        assertEquals('a', alpha.toChar(2));
+        assertTrue(alpha.contains('-'));
+        assertFalse(alpha.contains('Z'));
+        assertFalse(alpha.contains('b'));
+    }
+
+    @Test
+    public void testBulkConversion() {
+        int[] indices = UPPER.toInts("HELLOWORLD");
+        assertEquals(7, indices[0]);
+        assertEquals(3, indices[9]);
+        assertEquals("HELLOWORLD", UPPER.toChars(indices));
+        char[] dest = new char[4];
+        UPPER.toChars(indices, 2, dest, 0, 4);
+        assertEquals("LLOW", new String(dest));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateCharacter() {
+        new Alphabet("ABCA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMissingCharacter() {
+        new Alphabet("ABC").toInt('D');
+    }
+
+
+    @Test
+    public void testRangeAlphabet() {
+        Alphabet bytes = Alphabet.range('\u0100', '\u01ff');
+        assertEquals(256, bytes.size());
+        assertEquals(255, bytes.toInt('\u01ff'));
+        assertEquals('\u0180', bytes.toChar(128));
+        assertFalse(bytes.contains('A'));
+        assertTrue(new Alphabet("ABCabc").hasLowerCase());
+        assertFalse(UPPER.hasLowerCase());
+
+        Alphabet large = Alphabet.range('\u4000', '\ubfff');
+        assertEquals(0x8000, large.size());
+        assertEquals(0x7fff, large.toInt('\ubfff'));
+        int[] mapping = new int[large.size()];
+        for (int i = 0; i < mapping.length; i += 1) {
+            mapping[i] = (i + 1) % mapping.length;
+        }
+        Permutation perm = new Permutation(mapping, large);
+        assertEquals(0, perm.permute(0x7fff));
+        assertEquals(0x7fff, perm.invert(0));
+        assertTrue(perm.derangement());
+    }
+}
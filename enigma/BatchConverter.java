@@ -0,0 +1,243 @@
+package enigma;
+
+import java.nio.IntBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many messages, each under its own settings line, in one
+ *  call.  Messages are grouped by their rotor selection, ring settings
+ *  and plugboard, as parsed, so that inserting the rotors and building the
+ *  plugboard is done once per group; each message then costs only
+ *  setting the rotor positions and converting.  Groups, and runs of
+ *  messages within large groups, are converted concurrently in a
+ *  fork/join pool, each on its own copy of the group's machine; runs of
+ *  many short messages go through a LaneConverter instead.  Results are
+ *  returned in input order.
+ *  @author Melissa Ly
+ */
+class BatchConverter {
+
+    /** A converter for machines built to SPEC that runs in POOL,
+     *  converting at most RUN messages of a group per task. */
+    BatchConverter(MachineSpec spec, ForkJoinPool pool, int run) {
+        if (run <= 0) {
+            throw error("run length must be positive");
+        }
+        _spec = spec;
+        _pool = pool;
+        _run = run;
+    }
+
+    /** A converter for machines built to SPEC that runs in the common
+     *  fork/join pool with runs of DEFAULT_RUN messages. */
+    BatchConverter(MachineSpec spec) {
+        this(spec, ForkJoinPool.commonPool(), DEFAULT_RUN);
+    }
+
+    /** A message together with the settings line under which it is to
+     *  be converted. */
+    static final class Message {
+        /** The message TEXT, to be converted under SETTINGS, a settings
+         *  line such as "* B Beta III IV I AXLE (HQ) (EX)". */
+        Message(String settings, String text) {
+            _settings = settings;
+            _text = text;
+        }
+
+        /** Return my settings line. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Return my text. */
+        String text() {
+            return _text;
+        }
+
+        /** My settings line. */
+        private final String _settings;
+        /** My text. */
+        private final String _text;
+    }
+
+    /** Return the conversions of MESSAGES, in order.  Each message is
+     *  converted by a machine freshly set up by its settings line, read
+     *  as Main reads one (see Settings); rotors whose positions are not
+     *  given start at position 0. */
+    List<String> convert(List<Message> messages) {
+        LinkedHashMap<List<Object>, Group> groups = new LinkedHashMap<>();
+        String[] positions = new String[messages.size()];
+        ArrayList<Group> order = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i += 1) {
+            Settings settings =
+                Settings.parse(_spec.numRotors(), messages.get(i).settings());
+            List<Object> key = wiring(settings);
+            Group group = groups.get(key);
+            if (group == null) {
+                group = new Group(settings);
+                groups.put(key, group);
+                order.add(group);
+            }
+            group._members.add(i);
+            positions[i] = settings.positions();
+        }
+
+        String[] results = new String[messages.size()];
+        ArrayList<Run> tasks = new ArrayList<>();
+        for (Group group : order) {
+            int[] members = group.members();
+            for (int lo = 0; lo < members.length; lo += _run) {
+                tasks.add(new Run(group._machine, members, lo,
+                                  Math.min(members.length, lo + _run),
+                                  messages, positions, results));
+            }
+        }
+        if (tasks.size() == 1) {
+            tasks.get(0).compute();
+        } else if (!tasks.isEmpty()) {
+            _pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        return Arrays.asList(results);
+    }
+
+    /** Return a key identifying the rotors, ring settings and plugboard
+     *  that SETTINGS describes, so that settings lines that differ only
+     *  in rotor positions, or in how they write the same rings or
+     *  plugboard, share a group. */
+    private List<Object> wiring(Settings settings) {
+        Alphabet alpha = _spec.alphabet();
+        ArrayList<Object> key = new ArrayList<>();
+        for (int i = 0; i < _spec.numRotors(); i += 1) {
+            Rotor rotor = _spec.rotor(settings.rotor(i));
+            key.add(rotor == null ? settings.rotor(i) : rotor);
+        }
+        if (settings.rings() == null) {
+            key.add(IntBuffer.wrap(new int[_spec.numRotors() - 1]));
+        } else {
+            key.add(IntBuffer.wrap(alpha.toInts(settings.rings())));
+        }
+        int[] plugboard = new int[alpha.size()];
+        Permutation perm = settings.plugboard() == null ? null
+            : new Permutation(settings.plugboard(), alpha);
+        for (int c = 0; c < plugboard.length; c += 1) {
+            plugboard[c] = perm == null ? c : perm.permute(c);
+        }
+        key.add(IntBuffer.wrap(plugboard));
+        return key;
+    }
+
+    /** The messages sharing a rotor selection and plugboard. */
+    private class Group {
+        /** A group wired as SETTINGS describes. */
+        Group(Settings settings) {
+            _machine = _spec.newMachine();
+            settings.wire(_machine);
+        }
+
+        /** Return the input indices of my messages, in order. */
+        int[] members() {
+            int[] result = new int[_members.size()];
+            for (int i = 0; i < result.length; i += 1) {
+                result[i] = _members.get(i);
+            }
+            return result;
+        }
+
+        /** A machine with my rotors and plugboard, at default positions. */
+        private final Machine _machine;
+        /** Input indices of my messages. */
+        private final ArrayList<Integer> _members = new ArrayList<>();
+    }
+
+    /** The conversion of a run of messages from one group. */
+    private static class Run extends RecursiveAction {
+        /** A task converting the messages whose indices in MESSAGES are
+         *  MEMBERS[LO .. HI-1] on a copy of TEMPLATE, setting the rotors
+         *  to the corresponding entries of POSITIONS (or leaving them at
+         *  TEMPLATE's when null) and storing the results in RESULTS. */
+        Run(Machine template, int[] members, int lo, int hi,
+            List<Message> messages, String[] positions, String[] results) {
+            _template = template;
+            _members = members;
+            _lo = lo;
+            _hi = hi;
+            _messages = messages;
+            _positions = positions;
+            _results = results;
+        }
+
+        @Override
+        protected void compute() {
+            Machine machine = _template.copy();
+            String initial = machine.settings();
+            long total = 0;
+            for (int k = _lo; k < _hi; k += 1) {
+                total += _messages.get(_members[k]).text().length();
+            }
+            int count = _hi - _lo;
+            if (count >= LaneConverter.DEFAULT_LANES
+                && total <= (long) count * SHORT_MESSAGE) {
+                String[] settings = new String[count];
+                String[] texts = new String[count];
+                for (int k = 0; k < count; k += 1) {
+                    int i = _members[_lo + k];
+                    settings[k] =
+                        _positions[i] == null ? initial : _positions[i];
+                    texts[k] = _messages.get(i).text();
+                }
+                String[] converted =
+                    new LaneConverter(machine, LaneConverter.DEFAULT_LANES)
+                    .convert(settings, texts);
+                for (int k = 0; k < count; k += 1) {
+                    _results[_members[_lo + k]] = converted[k];
+                }
+                return;
+            }
+            for (int k = _lo; k < _hi; k += 1) {
+                int i = _members[k];
+                String posn = _positions[i];
+                machine.setRotors(posn == null ? initial : posn);
+                _results[i] = machine.convert(_messages.get(i).text());
+            }
+        }
+
+        /** Machine copied for this run. */
+        private final Machine _template;
+        /** Input indices of the group's messages. */
+        private final int[] _members;
+        /** Range of _members converted by this run. */
+        private final int _lo, _hi;
+        /** All the input messages. */
+        private final List<Message> _messages;
+        /** Rotor positions of each input message, or null. */
+        private final String[] _positions;
+        /** Results, by input index. */
+        private final String[] _results;
+    }
+
+    /** Runs whose messages average at most this many characters are
+     *  converted by a LaneConverter, which has no per-message setup. */
+    static final int SHORT_MESSAGE = 128;
+
+    /** Default maximum number of messages per task. */
+    static final int DEFAULT_RUN = 256;
+
+    /** Spec to which my machines are built. */
+    private final MachineSpec _spec;
+    /** Pool in which conversions run. */
+    private final ForkJoinPool _pool;
+    /** Maximum number of messages converted per task. */
+    private final int _run;
+}
@@ -0,0 +1,76 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchConverter class.
+ *  @author Melissa Ly
+ */
+public class BatchConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void testBatchConvert() {
+        MachineSpec spec = navalMachine("AAAA", "").spec();
+        String[] plugs = {"", "(AB)", "(HQ) (EX) (IP)"};
+        String[] posns = {"AXLE", "QEVZ", "ZZZZ"};
+        Random random = new Random(17);
+        ArrayList<BatchConverter.Message> batch = new ArrayList<>();
+        ArrayList<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i += 1) {
+            String plug = plugs[random.nextInt(plugs.length)];
+            String posn = posns[random.nextInt(posns.length)];
+            String msg = randomMessage(UPPER, 50 + i);
+            batch.add(new BatchConverter.Message(
+                    "* B Beta III IV I " + posn + " " + plug, msg));
+            expected.add(navalMachine(posn, plug).convert(msg));
+        }
+        BatchConverter converter =
+            new BatchConverter(spec, new ForkJoinPool(3), 7);
+        assertEquals(expected, converter.convert(batch));
+        assertEquals(expected, new BatchConverter(spec, new ForkJoinPool(2),
+                                                  64).convert(batch));
+        assertEquals(navalMachine("AAAA", "").convert("HELLO"),
+                     converter.convert(Arrays.asList(
+                             new BatchConverter.Message(
+                                     "*B Beta III IV I", "HELLO"))).get(0));
+    }
+
+    @Test
+    public void testSettingsLikeMain() {
+        Machine naval = navalMachine("AAAA", "");
+        String[] lines = {
+            "* B Beta III IV I AXLE (AB)(CD)",
+            "* B Beta III IV I AXL (HQ)",
+            "* B Beta III IV I AXLE (HQ) junk (EX)",
+            "* B Beta III IV I AXLE AAAA (HQ) (EX)",
+            "* B Beta III IV I QEVZ (XE)  (QH)",
+            "*B Beta III IV I AXLE BCDE",
+        };
+        ArrayList<BatchConverter.Message> batch = new ArrayList<>();
+        ArrayList<String> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i += 1) {
+            String line = lines[i % lines.length];
+            String msg = randomMessage(UPPER, 20 + i);
+            batch.add(new BatchConverter.Message(line, msg));
+            Machine M = naval.spec().newMachine();
+            Settings.parse(M.numRotors(), line).apply(M);
+            expected.add(M.convert(msg));
+        }
+        assertEquals(expected,
+                     new BatchConverter(naval.spec(), new ForkJoinPool(2), 3)
+                     .convert(batch));
+    }
+}
@@ -0,0 +1,457 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/** Micro- and end-to-end benchmark suite for the enigma package, in the
+ *  style of JMH: each benchmark is warmed up, then timed over several
+ *  measurement iterations, and reported as the mean time per operation
+ *  with a 99.9% confidence error.  The suite covers Permutation.permute
+ *  and invert, Rotor.convertForward and convertBackward,
+ *  Machine.advanceRotors, Machine.convert(String) over a range of
+ *  message sizes and rotor counts, and Main end to end on generated
+ *  input files.
+ *
+ *  Usage: java enigma.Benchmarks [options], where the options are
+ *  <pre>
+ *    --json=FILE       also write the results to FILE in JMH's JSON format
+ *    --filter=TEXT     run only benchmarks whose names contain TEXT
+ *    --warmup=N        N warmup iterations per benchmark (default 3)
+ *    --iterations=N    N measurement iterations per benchmark (default 5)
+ *    --time=MS         target length of each iteration (default 500)
+ *  </pre>
+ *  @author Melissa Ly
+ */
+public final class Benchmarks {
+
+    /** Run the benchmarks selected by ARGS (see the class comment). */
+    public static void main(String... args) throws IOException {
+        Benchmarks suite = new Benchmarks();
+        String json = null;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--json=")) {
+                json = value;
+            } else if (arg.startsWith("--filter=")) {
+                suite._filter = value;
+            } else if (arg.startsWith("--warmup=")) {
+                suite._warmup = Integer.parseInt(value);
+            } else if (arg.startsWith("--iterations=")) {
+                suite._iterations = Integer.parseInt(value);
+            } else if (arg.startsWith("--time=")) {
+                suite._iterationNanos = Long.parseLong(value) * MILLI;
+            } else {
+                System.err.printf("Error: unknown option %s%n", arg);
+                System.exit(1);
+            }
+        }
+        suite.runAll();
+        if (json != null) {
+            try (PrintStream out = new PrintStream(json, "UTF-8")) {
+                suite.writeJson(out);
+            }
+        }
+    }
+
+    /** A timed operation. */
+    interface Operation {
+        /** Perform the operation REPS times and return a value depending on
+         *  the results, so that the work cannot be optimized away. */
+        long run(long reps) throws Exception;
+    }
+
+    /** Run every benchmark that passes my filter. */
+    private void runAll() throws IOException {
+        System.out.printf("%-28s %-24s %14s %10s  %s%n",
+                          "Benchmark", "Params", "Score", "Error", "Units");
+
+        Alphabet alpha = new UpperCaseAlphabet();
+        Permutation perm = randomPermutation(alpha, new Random(1));
+        run("Permutation.permute", params(), "ns/op", 1, reps -> {
+            long sink = 0;
+            for (long r = 0; r < reps; r += 1) {
+                sink += perm.permute((int) (r % ALPHABET_SIZE));
+            }
+            return sink;
+        });
+        run("Permutation.invert", params(), "ns/op", 1, reps -> {
+            long sink = 0;
+            for (long r = 0; r < reps; r += 1) {
+                sink += perm.invert((int) (r % ALPHABET_SIZE));
+            }
+            return sink;
+        });
+
+        Rotor rotor = new MovingRotor("R", perm, "Q");
+        run("Rotor.convertForward", params(), "ns/op", 1, reps -> {
+            long sink = 0;
+            for (long r = 0; r < reps; r += 1) {
+                int p = (int) (r % ALPHABET_SIZE);
+                sink += rotor.convertForward(p, (p * 7) % ALPHABET_SIZE);
+            }
+            return sink;
+        });
+        run("Rotor.convertBackward", params(), "ns/op", 1, reps -> {
+            long sink = 0;
+            for (long r = 0; r < reps; r += 1) {
+                int p = (int) (r % ALPHABET_SIZE);
+                sink += rotor.convertBackward(p, (p * 7) % ALPHABET_SIZE);
+            }
+            return sink;
+        });
+
+        for (int slots : ROTOR_COUNTS) {
+            Machine machine = machine(alpha, slots);
+            run("Machine.advanceRotors", params("rotors", slots), "ns/op", 1,
+                reps -> {
+                    for (long r = 0; r < reps; r += 1) {
+                        machine.advanceRotors();
+                    }
+                    return machine.settings().hashCode();
+                });
+        }
+
+        for (int slots : ROTOR_COUNTS) {
+            for (int size : MESSAGE_SIZES) {
+                Machine machine = machine(alpha, slots);
+                String msg = new String(ConvertBench.randomText(size));
+                run("Machine.convert", params("rotors", slots, "size", size),
+                    "ns/char", size, reps -> {
+                        long sink = 0;
+                        for (long r = 0; r < reps; r += 1) {
+                            sink += machine.convert(msg).charAt(0);
+                        }
+                        return sink;
+                    });
+            }
+        }
+
+        Path dir = Files.createTempDirectory("enigma-bench");
+        try {
+            Path config = dir.resolve("bench.conf");
+            Files.write(config, CONFIG.getBytes(StandardCharsets.UTF_8));
+            Path output = dir.resolve("bench.out");
+            for (int megabytes : INPUT_SIZES) {
+                Path input = dir.resolve("bench" + megabytes + ".in");
+                long chars = writeInput(input, megabytes);
+                for (String mode : MAIN_MODES) {
+                    ArrayList<String> argv = new ArrayList<>();
+                    if (!mode.isEmpty()) {
+                        argv.add(mode);
+                    }
+                    argv.addAll(Arrays.asList(config.toString(),
+                                              input.toString(),
+                                              output.toString()));
+                    String[] mainArgs = argv.toArray(new String[0]);
+                    run("Main", params("input", megabytes + "MB",
+                                       "mode", mode.isEmpty() ? "-" : mode),
+                        "ns/char", chars, reps -> {
+                            for (long r = 0; r < reps; r += 1) {
+                                new Main(mainArgs).process();
+                            }
+                            return Files.size(output);
+                        });
+                }
+                Files.delete(input);
+            }
+            Files.deleteIfExists(output);
+            Files.delete(config);
+        } finally {
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /** Time OP, named NAME with parameters PARAMS, if it passes my
+     *  filter, reporting its time per unit of work in UNIT, where each
+     *  repetition of OP does UNITS units of work. */
+    private void run(String name, Map<String, Object> params, String unit,
+                     long units, Operation op) {
+        if (_filter != null && !name.contains(_filter)) {
+            return;
+        }
+        try {
+            long reps = calibrate(op);
+            for (int i = 0; i < _warmup; i += 1) {
+                time(op, reps);
+            }
+            double[] scores = new double[_iterations];
+            for (int i = 0; i < _iterations; i += 1) {
+                scores[i] = (double) time(op, reps) / (reps * units);
+            }
+            Result result = new Result(name, params, unit, scores);
+            _results.add(result);
+            System.out.printf("%-28s %-24s %14.3f %10.3f  %s%n", name,
+                              paramString(params), result.score(),
+                              result.error(), unit);
+        } catch (Exception excp) {
+            System.out.printf("%-28s %-24s failed: %s%n", name,
+                              paramString(params), excp);
+        }
+    }
+
+    /** Return the number of repetitions of OP that take about one
+     *  iteration time. */
+    private long calibrate(Operation op) throws Exception {
+        long reps = 1;
+        while (true) {
+            long nanos = time(op, reps);
+            if (nanos >= _iterationNanos / CALIBRATION_FRACTION
+                || reps >= Long.MAX_VALUE / 2) {
+                return Math.max(1, (long) ((double) reps * _iterationNanos
+                                           / Math.max(1, nanos)));
+            }
+            reps *= 2;
+        }
+    }
+
+    /** Return the time in nanoseconds taken by REPS repetitions of OP. */
+    private long time(Operation op, long reps) throws Exception {
+        long start = System.nanoTime();
+        _sink ^= op.run(reps);
+        return System.nanoTime() - start;
+    }
+
+    /** Write my results to OUT as a JMH-compatible JSON array. */
+    private void writeJson(PrintStream out) {
+        out.println("[");
+        for (int i = 0; i < _results.size(); i += 1) {
+            Result r = _results.get(i);
+            out.println("    {");
+            out.printf("        \"benchmark\" : \"enigma.%s\",%n", r._name);
+            out.println("        \"mode\" : \"avgt\",");
+            out.printf("        \"warmupIterations\" : %d,%n", _warmup);
+            out.printf("        \"measurementIterations\" : %d,%n",
+                       _iterations);
+            out.print("        \"params\" : {");
+            String sep = "";
+            for (Map.Entry<String, Object> e : r._params.entrySet()) {
+                out.printf("%s \"%s\" : \"%s\"", sep, e.getKey(),
+                           e.getValue());
+                sep = ",";
+            }
+            out.println(" },");
+            out.println("        \"primaryMetric\" : {");
+            out.printf("            \"score\" : %s,%n", r.score());
+            out.printf("            \"scoreError\" : %s,%n", r.error());
+            out.printf("            \"scoreUnit\" : \"%s\",%n", r._unit);
+            out.printf("            \"rawData\" : [ %s ]%n",
+                       Arrays.toString(r._scores));
+            out.println("        }");
+            out.println(i == _results.size() - 1 ? "    }" : "    },");
+        }
+        out.println("]");
+    }
+
+    /** The measurements of one benchmark. */
+    private static class Result {
+        /** A result for benchmark NAME with PARAMS, measured in UNIT with
+         *  one score per iteration in SCORES. */
+        Result(String name, Map<String, Object> params, String unit,
+               double[] scores) {
+            _name = name;
+            _params = params;
+            _unit = unit;
+            _scores = scores;
+        }
+
+        /** Return the mean score. */
+        double score() {
+            double sum = 0;
+            for (double s : _scores) {
+                sum += s;
+            }
+            return sum / _scores.length;
+        }
+
+        /** Return the half-width of the 99.9% confidence interval of the
+         *  mean score, or NaN if there are too few scores. */
+        double error() {
+            int n = _scores.length;
+            if (n < 2) {
+                return Double.NaN;
+            }
+            double mean = score(), sum = 0;
+            for (double s : _scores) {
+                sum += (s - mean) * (s - mean);
+            }
+            double t = n - 1 <= T_999.length ? T_999[n - 2] : Z_999;
+            return t * Math.sqrt(sum / (n - 1) / n);
+        }
+
+        /** Benchmark name. */
+        private final String _name;
+        /** Benchmark parameters. */
+        private final Map<String, Object> _params;
+        /** Unit of the scores. */
+        private final String _unit;
+        /** Score of each measurement iteration. */
+        private final double[] _scores;
+    }
+
+    /** Return the parameter map with alternating names and values
+     *  NAMESANDVALUES. */
+    private static Map<String, Object> params(Object... namesAndValues) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            result.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return result;
+    }
+
+    /** Return PARAMS as a compact string. */
+    private static String paramString(Map<String, Object> params) {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Object> e : params.entrySet()) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(e.getKey()).append('=').append(e.getValue());
+        }
+        return result.toString();
+    }
+
+    /** Return a random permutation of ALPHA chosen with RANDOM. */
+    private static Permutation randomPermutation(Alphabet alpha,
+                                                 Random random) {
+        int[] mapping = new int[alpha.size()];
+        for (int i = 0; i < mapping.length; i += 1) {
+            mapping[i] = i;
+        }
+        for (int i = mapping.length - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            int t = mapping[i];
+            mapping[i] = mapping[j];
+            mapping[j] = t;
+        }
+        return new Permutation(mapping, alpha);
+    }
+
+    /** Return a machine on ALPHA with SLOTS rotor slots: a reflector and
+     *  SLOTS - 1 moving rotors with random wirings, set to all 'A's. */
+    private static Machine machine(Alphabet alpha, int slots) {
+        Random random = new Random(slots);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[slots];
+        int[] pairs = new int[alpha.size()];
+        for (int i = 0; i < pairs.length; i += 2) {
+            pairs[i] = i + 1;
+            pairs[i + 1] = i;
+        }
+        names[0] = "REFLECTOR";
+        rotors.add(new Reflector(names[0], new Permutation(pairs, alpha)));
+        for (int i = 1; i < slots; i += 1) {
+            names[i] = "R" + i;
+            rotors.add(new MovingRotor(names[i],
+                    randomPermutation(alpha, random),
+                    String.valueOf(alpha.toChar(random.nextInt(
+                            alpha.size())))));
+        }
+        Machine machine = new Machine(alpha, slots, slots - 1, rotors);
+        machine.insertRotors(names);
+        char[] setting = new char[slots - 1];
+        Arrays.fill(setting, alpha.toChar(0));
+        machine.setRotors(new String(setting));
+        return machine;
+    }
+
+    /** Write MEGABYTES megabytes of message input to FILE: settings lines
+     *  for CONFIG, each followed by a block of message lines.  Returns the
+     *  number of message characters written. */
+    private static long writeInput(Path file, int megabytes)
+        throws IOException {
+        Random random = new Random(megabytes);
+        long total = (long) megabytes << MEGA_SHIFT, chars = 0;
+        StringBuilder text = new StringBuilder();
+        while (text.length() < total) {
+            text.append(String.format("* B BETA III IV I %c%c%c%c (AQ) (EP)%n",
+                    'A' + random.nextInt(ALPHABET_SIZE),
+                    'A' + random.nextInt(ALPHABET_SIZE),
+                    'A' + random.nextInt(ALPHABET_SIZE),
+                    'A' + random.nextInt(ALPHABET_SIZE)));
+            for (int line = 0; line < LINES_PER_BLOCK; line += 1) {
+                for (int i = 0; i < LINE_LENGTH; i += 1) {
+                    text.append((char) ('A' + random.nextInt(ALPHABET_SIZE)));
+                }
+                text.append(System.lineSeparator());
+                chars += LINE_LENGTH;
+            }
+        }
+        Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+        return chars;
+    }
+
+    /** Nanoseconds per millisecond. */
+    private static final long MILLI = 1_000_000;
+
+    /** log2 of the number of bytes in a megabyte. */
+    private static final int MEGA_SHIFT = 20;
+
+    /** Number of letters in the benchmark alphabet. */
+    private static final int ALPHABET_SIZE = 26;
+
+    /** Rotor counts for the machine benchmarks. */
+    private static final int[] ROTOR_COUNTS = { 3, 5, 8 };
+
+    /** Message sizes, in characters, for Machine.convert. */
+    private static final int[] MESSAGE_SIZES = { 1 << 10, 1 << 16, 1 << 20 };
+
+    /** Input sizes, in megabytes, for Main. */
+    private static final int[] INPUT_SIZES = { 1, 16 };
+
+    /** Options with which Main is run (empty for none). */
+    private static final String[] MAIN_MODES = { "", "--pipeline" };
+
+    /** Number of message lines after each settings line of Main input. */
+    private static final int LINES_PER_BLOCK = 200;
+
+    /** Number of characters in each message line of Main input. */
+    private static final int LINE_LENGTH = 60;
+
+    /** Calibration stops once a run takes this fraction of an
+     *  iteration. */
+    private static final int CALIBRATION_FRACTION = 10;
+
+    /** Student's t quantiles for two-sided 99.9% intervals with 1, 2,
+     *  ... degrees of freedom. */
+    private static final double[] T_999 = {
+        636.619, 31.599, 12.924, 8.610, 6.869,
+        5.959, 5.408, 5.041, 4.781, 4.587,
+    };
+
+    /** Normal quantile used in place of T_999 for many iterations. */
+    private static final double Z_999 = 3.291;
+
+    /** Configuration file used for Main. */
+    private static final String CONFIG = String.join(System.lineSeparator(),
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+        " 5 3",
+        " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+        " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+        " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)",
+        " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)",
+        " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)",
+        "           (RX) (SZ) (TV)",
+        "");
+
+    /** Selects benchmarks by name, or null for all. */
+    private String _filter;
+    /** Number of warmup iterations. */
+    private int _warmup = 3;
+    /** Number of measurement iterations. */
+    private int _iterations = 5;
+    /** Target length of an iteration in nanoseconds. */
+    private long _iterationNanos = 500 * MILLI;
+    /** Results so far, in order. */
+    private final ArrayList<Result> _results = new ArrayList<>();
+    /** Combines the values returned by operations. */
+    private long _sink;
+}
@@ -0,0 +1,219 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** A cache of parsed machine configurations in a compact binary form.
+ *  The compiled form of a configuration file F is kept in F.compiled and
+ *  holds the SHA-256 hash of F's contents, the alphabet, the slot and
+ *  pawl counts, and for each rotor its kind, name, wiring as a flat
+ *  array of indices and notches as a bitmask.  It is read back through a
+ *  memory mapping, and is recompiled whenever its hash no longer matches
+ *  F.
+ *
+ *  Layout (all integers big-endian):
+ *  <pre>
+ *    int magic, int version, byte[32] hash,
+ *    int alphabet size, char[size] alphabet,
+ *    int slots, int pawls, int rotor count, then for each rotor:
+ *      byte kind ('M', 'N' or 'R'), int name length, char[] name,
+ *      int[size] wiring, int notch words, long[] notch bitmask
+ *  </pre>
+ *  @author Melissa Ly
+ */
+class CompiledConfig {
+
+    /** Not instantiable. */
+    private CompiledConfig() {
+    }
+
+    /** Return the spec described by the configuration file CONFIG,
+     *  loading it from CONFIG's compiled form if that is up to date, and
+     *  otherwise obtaining it from PARSER and recompiling.  Failure to
+     *  read or write the compiled form is not an error; the configuration
+     *  is simply parsed. */
+    static MachineSpec load(Path config, Supplier<MachineSpec> parser) {
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256")
+                .digest(Files.readAllBytes(config));
+        } catch (IOException excp) {
+            throw error("could not open %s", config);
+        } catch (NoSuchAlgorithmException excp) {
+            return parser.get();
+        }
+        Path compiled = compiledPath(config);
+        MachineSpec spec = read(compiled, hash);
+        if (spec == null) {
+            spec = parser.get();
+            write(compiled, hash, spec);
+        }
+        return spec;
+    }
+
+    /** Return the name of the compiled form of CONFIG. */
+    static Path compiledPath(Path config) {
+        return config.resolveSibling(config.getFileName() + SUFFIX);
+    }
+
+    /** Return the spec in the compiled file COMPILED, or null if it is
+     *  missing, unreadable, or was not compiled from a configuration
+     *  whose hash is HASH. */
+    static MachineSpec read(Path compiled, byte[] hash) {
+        if (!Files.isRegularFile(compiled)) {
+            return null;
+        }
+        try (FileChannel file = FileChannel.open(compiled)) {
+            ByteBuffer in =
+                file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return null;
+            }
+            byte[] stored = new byte[hash.length];
+            in.get(stored);
+            if (!Arrays.equals(stored, hash)) {
+                return null;
+            }
+            Alphabet alphabet = new Alphabet(readString(in));
+            int size = alphabet.size();
+            int slots = in.getInt(), pawls = in.getInt();
+            int count = in.getInt();
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            int[] wiring = new int[size];
+            for (int r = 0; r < count; r += 1) {
+                byte kind = in.get();
+                String name = readString(in);
+                in.asIntBuffer().get(wiring);
+                in.position(in.position() + size * Integer.BYTES);
+                Permutation perm = new Permutation(wiring, alphabet);
+                long[] notches = new long[in.getInt()];
+                in.asLongBuffer().get(notches);
+                in.position(in.position() + notches.length * Long.BYTES);
+                rotors.add(rotor(kind, name, perm, notches));
+            }
+            return new MachineSpec(alphabet, slots, pawls, rotors);
+        } catch (IOException | RuntimeException excp) {
+            return null;
+        }
+    }
+
+    /** Write the compiled form of SPEC, compiled from a configuration
+     *  whose hash is HASH, to COMPILED, replacing it atomically. */
+    static void write(Path compiled, byte[] hash, MachineSpec spec) {
+        Alphabet alphabet = spec.alphabet();
+        int size = alphabet.size();
+        int words = (size + Long.SIZE - 1) / Long.SIZE;
+        int length = 3 * Integer.BYTES + hash.length + size * Character.BYTES
+            + 3 * Integer.BYTES;
+        for (Rotor r : spec.rotors()) {
+            length += 1 + Integer.BYTES + r.name().length() * Character.BYTES
+                + size * Integer.BYTES + Integer.BYTES + words * Long.BYTES;
+        }
+        ByteBuffer out = ByteBuffer.allocate(length);
+        out.putInt(MAGIC).putInt(VERSION).put(hash);
+        out.putInt(size);
+        for (int i = 0; i < size; i += 1) {
+            out.putChar(alphabet.toChar(i));
+        }
+        out.putInt(spec.numRotors()).putInt(spec.numPawls());
+        out.putInt(spec.rotors().size());
+        for (Rotor r : spec.rotors()) {
+            out.put((byte) (r.reflecting() ? 'R' : r.rotates() ? 'M' : 'N'));
+            out.putInt(r.name().length());
+            for (int i = 0; i < r.name().length(); i += 1) {
+                out.putChar(r.name().charAt(i));
+            }
+            for (int i = 0; i < size; i += 1) {
+                out.putInt(r.permutation().permute(i));
+            }
+            long[] notches = spec.notches(r.name());
+            out.putInt(notches.length);
+            for (long word : notches) {
+                out.putLong(word);
+            }
+        }
+        out.flip();
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(compiled.toAbsolutePath()
+                                        .getParent(), "enigma", SUFFIX);
+            try (FileChannel file = FileChannel.open(temp,
+                     StandardOpenOption.WRITE)) {
+                while (out.hasRemaining()) {
+                    file.write(out);
+                }
+            }
+            Files.move(temp, compiled, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException excp) {
+            deleteQuietly(temp);
+        }
+    }
+
+    /** Delete FILE, if it is not null and exists, ignoring failure. */
+    private static void deleteQuietly(Path file) {
+        try {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Return a rotor of kind KIND ('M', 'N' or 'R') named NAME with
+     *  permutation PERM and, if it moves, notches at the positions set in
+     *  the bitmask NOTCHES. */
+    private static Rotor rotor(byte kind, String name, Permutation perm,
+                               long[] notches) {
+        switch (kind) {
+        case 'M':
+            StringBuilder chars = new StringBuilder();
+            for (int i = 0; i < perm.size(); i += 1) {
+                if ((notches[i / Long.SIZE] & (1L << i)) != 0) {
+                    chars.append(perm.alphabet().toChar(i));
+                }
+            }
+            return new MovingRotor(name, perm, chars.toString());
+        case 'N':
+            return new FixedRotor(name, perm);
+        case 'R':
+            return new Reflector(name, perm);
+        default:
+            throw error("bad rotor kind in compiled configuration");
+        }
+    }
+
+    /** Return a length-prefixed string read from IN. */
+    private static String readString(ByteBuffer in) {
+        char[] chars = new char[in.getInt()];
+        in.asCharBuffer().get(chars);
+        in.position(in.position() + chars.length * Character.BYTES);
+        return new String(chars);
+    }
+
+    /** Suffix of compiled configuration files. */
+    static final String SUFFIX = ".compiled";
+
+    /** Identifies compiled configuration files. */
+    private static final int MAGIC = 0x456e6967;
+
+    /** Version of the compiled format.  Compiled files are matched to
+     *  their configurations only by the hash of its contents, so this
+     *  must change whenever the meaning of a configuration does: version
+     *  2 honors the alphabet given in the configuration. */
+    private static final int VERSION = 2;
+}
@@ -0,0 +1,90 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Length-scaling benchmark for Machine conversion.  For each message
+ *  length given on the command line (in megabytes; by default 1, 10 and
+ *  100), streams that many random characters through a five-rotor machine
+ *  and reports the time per character, which should stay flat as the
+ *  length grows.
+ *  @author Melissa Ly
+ */
+public final class ConvertBench {
+
+    /** Run the benchmark for the lengths in ARGS, given in megabytes. */
+    public static void main(String... args) {
+        int[] sizes = { 1, 10, 100 };
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i += 1) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        char[] chunk = randomText(Machine.CHUNK_SIZE);
+        char[] out = new char[chunk.length];
+        runOnce(chunk, out, sizes[0] * MEGA);
+        System.out.printf("%10s %12s %10s%n", "chars", "ms", "ns/char");
+        for (int size : sizes) {
+            long chars = (long) size * MEGA;
+            long nanos = runOnce(chunk, out, chars);
+            System.out.printf("%10d %12.1f %10.2f%n", chars, nanos / 1e6,
+                    (double) nanos / chars);
+        }
+    }
+
+    /** Convert TOTAL characters taken repeatedly from CHUNK into OUT on a
+     *  freshly set machine and return the elapsed time in nanoseconds. */
+    private static long runOnce(char[] chunk, char[] out, long total) {
+        Machine machine = naval();
+        long start = System.nanoTime();
+        for (long done = 0; done < total; done += chunk.length) {
+            int len = (int) Math.min(chunk.length, total - done);
+            machine.convert(chunk, 0, out, 0, len);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /** Return LEN random upper-case letters. */
+    static char[] randomText(int len) {
+        Random random = new Random(len);
+        char[] text = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            text[i] = (char) ('A' + random.nextInt(ALPHABET_SIZE));
+        }
+        return text;
+    }
+
+    /** Return a naval machine "B BETA III IV I" set to AXLE with a
+     *  small plugboard. */
+    static Machine naval() {
+        Alphabet alpha = new UpperCaseAlphabet();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new MovingRotor("I",
+                new Permutation("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ)"
+                        + " (S)", alpha), "Q"));
+        rotors.add(new MovingRotor("III",
+                new Permutation("(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)", alpha),
+                "V"));
+        rotors.add(new MovingRotor("IV",
+                new Permutation("(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)", alpha),
+                "J"));
+        rotors.add(new FixedRotor("BETA",
+                new Permutation("(ALBEVFCYODJWUGNMQTZSKPR) (HIX)", alpha)));
+        rotors.add(new Reflector("B",
+                new Permutation("(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO)"
+                        + " (MP) (RX) (SZ) (TV)", alpha)));
+        Machine machine = new Machine(alpha, 5, 3, rotors);
+        machine.insertRotors(new String[] { "B", "BETA", "III", "IV", "I" });
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                alpha));
+        return machine;
+    }
+
+    /** Characters per megabyte of message. */
+    private static final int MEGA = 1 << 20;
+
+    /** Number of letters in the benchmark alphabet. */
+    private static final int ALPHABET_SIZE = 26;
+}
@@ -0,0 +1,383 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext attack in the manner of the Turing-Welchman Bombe.
+ *  A crib (plaintext believed to lie at a known place in a ciphertext)
+ *  gives a menu: at each step i of the crib, plaintext letter p and
+ *  ciphertext letter q are linked by the scrambler S_i (the machine
+ *  without its plugboard at that step), in that if p is steckered to x
+ *  then q is steckered to S_i(x), and vice versa.
+ *
+ *  For each rotor order, the scrambler at every position of the moving
+ *  rotors is tabulated once (unless there are more than
+ *  SCRAMBLER_TABLE_LIMIT entries), together with the position that
+ *  follows it according to Machine.advanceRotors, so the scramblers at
+ *  the steps of the crib for any start position are found by following
+ *  the table.  Then for each hypothesis "the most linked letter of the
+ *  menu is steckered to g", the consequences are propagated through the
+ *  menu on a board of size x size bits, with the symmetry of the
+ *  plugboard (the Bombe's diagonal board) applied at each step.  A
+ *  hypothesis that leads to some letter being steckered to two
+ *  different letters is rejected as soon as that happens, without
+ *  decrypting anything; one that survives is a stop, reported with the
+ *  plugboard pairs it implies.  As in KeySearch, non-moving rotors are
+ *  held at position 0, ring settings are those given to setRings, and
+ *  rotor orders are tried concurrently in a fork/join pool.
+ *  @author Melissa Ly
+ */
+class CribSolver {
+
+    /** A solver for machines built to SPEC that runs in POOL. */
+    CribSolver(MachineSpec spec, ForkJoinPool pool) {
+        _spec = spec;
+        _pool = pool;
+    }
+
+    /** A solver for machines built to SPEC that runs in the common
+     *  fork/join pool. */
+    CribSolver(MachineSpec spec) {
+        this(spec, ForkJoinPool.commonPool());
+    }
+
+    /** A key consistent with a crib: a rotor order, the start positions
+     *  of the message, and the plugboard pairs deduced from the menu. */
+    static final class Stop {
+        /** A stop using ROTORS (reflector first) at start positions
+         *  SETTING, with deduced plugboard cycles PLUGBOARD. */
+        Stop(String[] rotors, String setting, String plugboard) {
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return the start positions of the message. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the deduced plugboard pairs, as cycles in the form
+         *  accepted by Permutation, such as "(AB) (EX)". */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Returns my key as a settings line. */
+        @Override
+        public String toString() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** My start positions. */
+        private final String _setting;
+        /** Deduced plugboard cycles. */
+        private final String _plugboard;
+    }
+
+    /** Use the ring settings RINGS, in the form accepted by
+     *  Machine.setRings (null for all at 0), in all tested keys. */
+    void setRings(String rings) {
+        _rings = rings;
+    }
+
+    /** Return the stops for CRIB, taken to be the plaintext of the
+     *  characters of CIPHERTEXT starting at OFFSET, in order of rotor
+     *  order and then start position.  Whitespace in both is ignored. */
+    List<Stop> solve(String ciphertext, String crib, int offset) {
+        Alphabet alpha = _spec.alphabet();
+        String text = ciphertext.replaceAll("\\s+", "");
+        int[] plain = alpha.toInts(crib.replaceAll("\\s+", ""));
+        if (plain.length == 0 || offset < 0
+            || offset + plain.length > text.length()) {
+            throw error("crib does not fit the ciphertext at %d", offset);
+        }
+        int[] cipher = alpha.toInts(text.substring(offset,
+                                                   offset + plain.length));
+        Menu menu = new Menu(alpha.size(), plain, cipher);
+        ArrayList<Order> tasks = new ArrayList<>();
+        for (String[] order : KeySearch.orders(_spec)) {
+            tasks.add(new Order(order, menu, offset));
+        }
+        if (tasks.size() == 1) {
+            tasks.get(0).compute();
+        } else if (!tasks.isEmpty()) {
+            _pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        ArrayList<Stop> result = new ArrayList<>();
+        for (Order task : tasks) {
+            result.addAll(task._stops);
+        }
+        return result;
+    }
+
+    /** The letter-pair links of a crib. */
+    private static class Menu {
+        /** The menu of a crib of plaintext PLAIN over ciphertext CIPHER
+         *  (as indices into an alphabet of SIZE characters). */
+        Menu(int size, int[] plain, int[] cipher) {
+            _length = plain.length;
+            int[] degree = new int[size];
+            for (int i = 0; i < _length; i += 1) {
+                degree[plain[i]] += 1;
+                degree[cipher[i]] += 1;
+            }
+            _other = new int[size][];
+            _step = new int[size][];
+            int test = 0;
+            for (int c = 0; c < size; c += 1) {
+                _other[c] = new int[degree[c]];
+                _step[c] = new int[degree[c]];
+                if (degree[c] > degree[test]) {
+                    test = c;
+                }
+            }
+            _test = test;
+            Arrays.fill(degree, 0);
+            for (int i = 0; i < _length; i += 1) {
+                int p = plain[i], q = cipher[i];
+                _other[p][degree[p]] = q;
+                _step[p][degree[p]] = i;
+                degree[p] += 1;
+                _other[q][degree[q]] = p;
+                _step[q][degree[q]] = i;
+                degree[q] += 1;
+            }
+        }
+
+        /** Number of steps in the crib. */
+        private final int _length;
+        /** _other[c][j] is the letter linked to c by its j-th link, made
+         *  at step _step[c][j] of the crib. */
+        private final int[][] _other, _step;
+        /** The letter with the most links, whose partner is guessed. */
+        private final int _test;
+    }
+
+    /** The search of all start positions of one rotor order. */
+    private class Order extends RecursiveAction {
+        /** A task trying the rotor order ORDER against MENU, whose crib
+         *  begins OFFSET characters into the message. */
+        Order(String[] order, Menu menu, int offset) {
+            _order = order;
+            _menu = menu;
+            _offset = offset;
+        }
+
+        @Override
+        protected void compute() {
+            Machine machine = _spec.newMachine();
+            machine.insertRotors(_order);
+            machine.setRotors(machine.settings());
+            if (_rings != null) {
+                machine.setRings(_rings);
+            }
+            int size = _spec.alphabet().size(), slots = _order.length;
+            int first = slots - _spec.numPawls();
+            long space = 1;
+            for (int s = first; s < slots; s += 1) {
+                space *= size;
+                if (space > Integer.MAX_VALUE) {
+                    throw error("too many rotor positions to search");
+                }
+            }
+            int states = (int) space;
+            _words = (size + Long.SIZE - 1) / Long.SIZE;
+            _board = new long[size * _words];
+            _pending = new int[size * size];
+            _base = new int[_menu._length];
+            int[] next = null;
+            if ((long) states * size <= SCRAMBLER_TABLE_LIMIT) {
+                _scramblers = new int[states * size];
+                next = new int[states];
+                for (int state = 0; state < states; state += 1) {
+                    setState(machine, state, first);
+                    machine.substitution(_scramblers, state * size);
+                    machine.advanceRotors();
+                    next[state] = state(machine, first);
+                }
+            } else {
+                _scramblers = new int[_menu._length * size];
+            }
+            for (int start = 0; start < states; start += 1) {
+                if (next != null) {
+                    int state = start;
+                    for (int i = 0; i < _offset; i += 1) {
+                        state = next[state];
+                    }
+                    for (int i = 0; i < _menu._length; i += 1) {
+                        state = next[state];
+                        _base[i] = state * size;
+                    }
+                } else {
+                    setState(machine, start, first);
+                    for (int i = 0; i < _offset; i += 1) {
+                        machine.advanceRotors();
+                    }
+                    for (int i = 0; i < _menu._length; i += 1) {
+                        machine.advanceRotors();
+                        _base[i] = i * size;
+                        machine.substitution(_scramblers, _base[i]);
+                    }
+                }
+                for (int g = 0; g < size; g += 1) {
+                    if (propagate(size, _menu._test, g)) {
+                        setState(machine, start, first);
+                        _stops.add(new Stop(_order, machine.settings(),
+                                            plugboard(size)));
+                    }
+                }
+            }
+        }
+
+        /** Set the moving rotors of MACHINE, which start at slot FIRST,
+         *  to the positions numbered STATE: the positions of the moving
+         *  rotors, left to right, are the digits of STATE in base size. */
+        private void setState(Machine machine, int state, int first) {
+            int size = _spec.alphabet().size();
+            for (int s = _order.length - 1; s >= first; s -= 1) {
+                machine.setPosition(s, state % size);
+                state /= size;
+            }
+        }
+
+        /** Return the number of the positions of the moving rotors of
+         *  MACHINE, which start at slot FIRST, as for setState. */
+        private int state(Machine machine, int first) {
+            int size = _spec.alphabet().size(), state = 0;
+            for (int s = first; s < _order.length; s += 1) {
+                state = state * size + machine.position(s);
+            }
+            return state;
+        }
+
+        /** Clear the board, hypothesize that TEST is steckered to GUESS
+         *  and propagate the consequences through the menu, for an
+         *  alphabet of SIZE characters.  Return false as soon as some
+         *  letter is found steckered to two letters, and otherwise true,
+         *  leaving the deduced pairs on the board. */
+        private boolean propagate(int size, int test, int guess) {
+            Arrays.fill(_board, 0);
+            int top = 0;
+            _pending[top++] = test * size + guess;
+            if (!light(test, guess)) {
+                return false;
+            }
+            while (top > 0) {
+                int pair = _pending[--top];
+                int a = pair / size, b = pair % size;
+                int[] other = _menu._other[a], step = _menu._step[a];
+                for (int k = -1; k < other.length; k += 1) {
+                    int c, d;
+                    if (k < 0) {
+                        c = b;
+                        d = a;
+                    } else {
+                        c = other[k];
+                        d = _scramblers[_base[step[k]] + b];
+                    }
+                    if (!lit(c, d)) {
+                        if (!light(c, d)) {
+                            return false;
+                        }
+                        _pending[top++] = c * size + d;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Return true iff the bit for the pair A, B is set. */
+        private boolean lit(int a, int b) {
+            return (_board[a * _words + b / Long.SIZE]
+                    & (1L << (b % Long.SIZE))) != 0;
+        }
+
+        /** Set the bit for the pair A, B, returning false iff A's row
+         *  already holds a different letter. */
+        private boolean light(int a, int b) {
+            int row = a * _words;
+            for (int w = 0; w < _words; w += 1) {
+                if (_board[row + w] != 0
+                    && (w != b / Long.SIZE
+                        || _board[row + w] != 1L << (b % Long.SIZE))) {
+                    return false;
+                }
+            }
+            _board[row + b / Long.SIZE] |= 1L << (b % Long.SIZE);
+            return true;
+        }
+
+        /** Return the pairs of distinct letters on the board, for an
+         *  alphabet of SIZE characters, as plugboard cycles. */
+        private String plugboard(int size) {
+            Alphabet alpha = _spec.alphabet();
+            StringBuilder result = new StringBuilder();
+            for (int a = 0; a < size; a += 1) {
+                for (int b = a + 1; b < size; b += 1) {
+                    if (lit(a, b)) {
+                        if (result.length() > 0) {
+                            result.append(' ');
+                        }
+                        result.append('(').append(alpha.toChar(a))
+                            .append(alpha.toChar(b)).append(')');
+                    }
+                }
+            }
+            return result.toString();
+        }
+
+        /** Names of my rotors. */
+        private final String[] _order;
+        /** The menu being tested. */
+        private final Menu _menu;
+        /** Position of the crib in the message. */
+        private final int _offset;
+        /** Number of longs per row of _board. */
+        private int _words;
+        /** Bit b of row a (bit b % 64 of _board[a * _words + b / 64]) is
+         *  set iff a is deduced to be steckered to b. */
+        private long[] _board;
+        /** Pairs lit but not yet propagated, each as a * size + b. */
+        private int[] _pending;
+        /** Scrambler substitutions: _scramblers[_base[i] + x] is the
+         *  conversion of x at step i of the crib.  Holds the scrambler
+         *  of every position of the moving rotors, when that fits in
+         *  SCRAMBLER_TABLE_LIMIT entries, and otherwise those of the
+         *  steps of the crib for the current start position. */
+        private int[] _scramblers;
+        /** Offsets into _scramblers of the steps of the crib. */
+        private int[] _base;
+        /** The stops found. */
+        private final ArrayList<Stop> _stops = new ArrayList<>();
+    }
+
+    /** Maximum number of entries in a table of the scramblers of all
+     *  rotor positions of a rotor order. */
+    static final int SCRAMBLER_TABLE_LIMIT = 1 << 21;
+
+    /** Spec to which tested machines are built. */
+    private final MachineSpec _spec;
+    /** Pool in which rotor orders are tried. */
+    private final ForkJoinPool _pool;
+    /** Ring settings of all tested keys, or null. */
+    private String _rings;
+}
@@ -0,0 +1,50 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribSolver class.
+ *  @author Melissa Ly
+ */
+public class CribSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void testCribSolver() {
+        MachineSpec spec = smallSpec();
+        Machine machine = spec.newMachine();
+        machine.insertRotors(new String[] {"B", "II", "IV", "I"});
+        machine.setRotors("KZV");
+        String plugs = "(AT) (BL) (DF) (HQ) (EX) (MR)";
+        machine.setPlugboard(new Permutation(plugs, spec.alphabet()));
+        String plain = "ATTACKATDAWNALONGTHEEASTERNRIDGEWITHALLAVAILABLEUNITS";
+        String cipher = machine.convert(plain);
+        List<CribSolver.Stop> stops =
+            new CribSolver(spec).solve(cipher, plain.substring(5, 37), 5);
+        CribSolver.Stop found = null;
+        for (CribSolver.Stop stop : stops) {
+            if (stop.toString().startsWith("* B II IV I KZV")) {
+                found = stop;
+            }
+        }
+        assertNotNull(found);
+        assertTrue(stops.size() < 20);
+        for (String pair : found.plugboard().split(" ")) {
+            assertTrue(pair, plugs.contains(pair));
+        }
+        Machine check = spec.newMachine();
+        check.insertRotors(found.rotors());
+        check.setRotors(found.setting());
+        check.setPlugboard(new Permutation(plugs, spec.alphabet()));
+        assertEquals(plain, check.convert(cipher));
+    }
+}
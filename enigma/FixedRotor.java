@@ -12,4 +12,14 @@ class FixedRotor extends Rotor {
     FixedRotor(String name, Permutation perm) {
         super(name, perm);
     }
+
+    /** UNRINGED at ring setting RING, whose permutation is PERM. */
+    FixedRotor(FixedRotor unringed, Permutation perm, int ring) {
+        super(unringed, perm, ring);
+    }
+
+    @Override
+    Rotor ringed(Permutation perm, int ring) {
+        return new FixedRotor(this, perm, ring);
+    }
 }
@@ -0,0 +1,291 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** An exhaustive search of the keys of machines built to a spec, for
+ *  recovering the settings of a ciphertext.  Every rotor order (a
+ *  reflector, distinct non-moving rotors for the slots without pawls,
+ *  and distinct moving rotors for the rest) is tried at every start
+ *  position of its moving rotors; non-moving rotors are held at position
+ *  0.  Each candidate decrypts a prefix of the ciphertext and is scored
+ *  by the index of coincidence of the result, which is near 1/size for
+ *  a wrong key and markedly higher for natural-language plaintext.  The
+ *  plugboard and ring settings are not searched: all candidates use
+ *  those given to setPlugboard and setRings, if any.
+ *
+ *  Rotor orders are searched concurrently in a fork/join pool.  Each
+ *  task has one machine, moved from position to position with
+ *  Machine.setPosition, and converts into buffers allocated once, so the
+ *  inner loop allocates nothing; each task keeps its own best
+ *  candidates, and these are merged at the end.
+ *  @author Melissa Ly
+ */
+class KeySearch {
+
+    /** A search of the keys of machines built to SPEC that runs in
+     *  POOL. */
+    KeySearch(MachineSpec spec, ForkJoinPool pool) {
+        _spec = spec;
+        _pool = pool;
+    }
+
+    /** A search of the keys of machines built to SPEC that runs in the
+     *  common fork/join pool. */
+    KeySearch(MachineSpec spec) {
+        this(spec, ForkJoinPool.commonPool());
+    }
+
+    /** A key found by a search: a rotor order and start positions, with
+     *  the score of the decryption under that key. */
+    static final class Candidate implements Comparable<Candidate> {
+        /** A candidate using ROTORS (reflector first) at start positions
+         *  SETTING, in the form accepted by Machine.setRotors, whose
+         *  decryption has index of coincidence SCORE. */
+        Candidate(String[] rotors, String setting, double score) {
+            _rotors = rotors;
+            _setting = setting;
+            _score = score;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my start positions. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the index of coincidence of my decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Orders candidates by score, ties broken by key, so that the
+         *  best candidate is the greatest. */
+        @Override
+        public int compareTo(Candidate other) {
+            int c = Double.compare(_score, other._score);
+            return c != 0 ? c : other.toString().compareTo(toString());
+        }
+
+        /** Returns my key as a settings line (without plugboard). */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _setting;
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** My start positions. */
+        private final String _setting;
+        /** My score. */
+        private final double _score;
+    }
+
+    /** Use the ring settings RINGS, in the form accepted by
+     *  Machine.setRings (null for all at 0), in all candidate keys. */
+    void setRings(String rings) {
+        _rings = rings;
+    }
+
+    /** Use PLUGBOARD (null for none) in all candidate keys. */
+    void setPlugboard(Permutation plugboard) {
+        _plugboard = plugboard;
+    }
+
+    /** Return the number of rotor orders that a search tries. */
+    int numOrders() {
+        return orders(_spec).size();
+    }
+
+    /** Return the K best candidate keys for CIPHERTEXT, best first,
+     *  scoring each by decrypting the first PREFIX characters of
+     *  CIPHERTEXT (or all of it, if shorter).  Whitespace in CIPHERTEXT
+     *  is ignored; all other characters must be in the alphabet. */
+    List<Candidate> search(String ciphertext, int prefix, int k) {
+        if (k <= 0 || prefix <= 1) {
+            throw error("search needs a positive count and a prefix of at"
+                        + " least two characters");
+        }
+        String text = ciphertext.replaceAll("\\s+", "");
+        int[] cipher =
+            _spec.alphabet().toInts(text.substring(0,
+                                                   Math.min(prefix,
+                                                            text.length())));
+        if (cipher.length < 2) {
+            throw error("ciphertext too short to score");
+        }
+        List<String[]> orders = orders(_spec);
+        ArrayList<Order> tasks = new ArrayList<>();
+        for (String[] order : orders) {
+            tasks.add(new Order(order, cipher, k));
+        }
+        if (tasks.size() == 1) {
+            tasks.get(0).compute();
+        } else if (!tasks.isEmpty()) {
+            _pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        PriorityQueue<Candidate> best = new PriorityQueue<>();
+        for (Order task : tasks) {
+            for (Candidate c : task._best) {
+                offer(best, c, k);
+            }
+        }
+        ArrayList<Candidate> result = new ArrayList<>(best);
+        result.sort(Collections.reverseOrder());
+        return result;
+    }
+
+    /** Add CANDIDATE to HEAP, a min-heap holding at most K of the best
+     *  candidates seen. */
+    private static void offer(PriorityQueue<Candidate> heap,
+                              Candidate candidate, int k) {
+        if (heap.size() < k) {
+            heap.add(candidate);
+        } else if (candidate.compareTo(heap.peek()) > 0) {
+            heap.poll();
+            heap.add(candidate);
+        }
+    }
+
+    /** Return all the rotor orders of machines built to SPEC, each the
+     *  names of the rotors for all slots, reflector first. */
+    static List<String[]> orders(MachineSpec spec) {
+        ArrayList<String> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(), moving = new ArrayList<>();
+        for (Rotor r : spec.rotors()) {
+            if (r.reflecting()) {
+                reflectors.add(r.name());
+            } else if (r.rotates()) {
+                moving.add(r.name());
+            } else {
+                fixed.add(r.name());
+            }
+        }
+        int slots = spec.numRotors(), first = slots - spec.numPawls();
+        ArrayList<String[]> result = new ArrayList<>();
+        String[] order = new String[slots];
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            arrange(order, 1, first, fixed, moving, result);
+        }
+        return result;
+    }
+
+    /** Add to RESULT every completion of ORDER, whose slots before SLOT
+     *  are filled, that puts distinct members of FIXED in the slots
+     *  before FIRST and distinct members of MOVING in the rest. */
+    private static void arrange(String[] order, int slot, int first,
+                                List<String> fixed, List<String> moving,
+                                List<String[]> result) {
+        if (slot == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        for (String name : slot < first ? fixed : moving) {
+            boolean used = false;
+            for (int i = 1; i < slot; i += 1) {
+                used |= order[i].equals(name);
+            }
+            if (!used) {
+                order[slot] = name;
+                arrange(order, slot + 1, first, fixed, moving, result);
+            }
+        }
+    }
+
+    /** The search of all start positions of one rotor order. */
+    private class Order extends RecursiveAction {
+        /** A task trying the rotor order ORDER on CIPHER (as alphabet
+         *  indices), keeping the best K candidates. */
+        Order(String[] order, int[] cipher, int k) {
+            _order = order;
+            _cipher = cipher;
+            _k = k;
+        }
+
+        @Override
+        protected void compute() {
+            Machine machine = _spec.newMachine();
+            machine.insertRotors(_order);
+            machine.setRotors(machine.settings());
+            if (_rings != null) {
+                machine.setRings(_rings);
+            }
+            machine.setPlugboard(_plugboard);
+            int size = _spec.alphabet().size(), slots = _order.length;
+            int first = slots - _spec.numPawls();
+            int[] posn = new int[slots];
+            int[] counts = new int[size];
+            long floor = -1;
+            while (true) {
+                for (int s = first; s < slots; s += 1) {
+                    machine.setPosition(s, posn[s]);
+                }
+                Arrays.fill(counts, 0);
+                for (int c : _cipher) {
+                    counts[machine.convert(c)] += 1;
+                }
+                long pairs = 0;
+                for (int n : counts) {
+                    pairs += (long) n * (n - 1);
+                }
+                if (pairs >= floor) {
+                    for (int s = first; s < slots; s += 1) {
+                        machine.setPosition(s, posn[s]);
+                    }
+                    long n = _cipher.length;
+                    offer(_best, new Candidate(_order, machine.settings(),
+                                               (double) pairs
+                                               / (n * (n - 1))), _k);
+                    if (_best.size() == _k) {
+                        floor = Math.round(_best.peek().score()
+                                           * n * (n - 1));
+                    }
+                }
+                int s = slots - 1;
+                while (s >= first && posn[s] == size - 1) {
+                    posn[s] = 0;
+                    s -= 1;
+                }
+                if (s < first) {
+                    break;
+                }
+                posn[s] += 1;
+            }
+        }
+
+        /** Names of my rotors. */
+        private final String[] _order;
+        /** Prefix of the ciphertext, as indices. */
+        private final int[] _cipher;
+        /** Number of candidates to keep. */
+        private final int _k;
+        /** My best candidates, least first. */
+        private final PriorityQueue<Candidate> _best = new PriorityQueue<>();
+    }
+
+    /** Spec to which searched machines are built. */
+    private final MachineSpec _spec;
+    /** Pool in which searches run. */
+    private final ForkJoinPool _pool;
+    /** Plugboard of all candidates, or null. */
+    private Permutation _plugboard;
+    /** Ring settings of all candidates, or null. */
+    private String _rings;
+}
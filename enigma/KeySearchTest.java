@@ -0,0 +1,39 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author Melissa Ly
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void testKeySearch() {
+        MachineSpec spec = smallSpec();
+        Machine machine = spec.newMachine();
+        machine.insertRotors(new String[] {"C", "III", "I", "IV"});
+        machine.setRotors("QMZ");
+        String cipher = machine.convert(
+                "FROMHISBRUTALCONQUESTHEHADGAINEDAGREATSTOREOFTREASURES"
+                + "WHICHHEHADTAKENWITHHIMTOTHEISLANDANDHIDDENINTHECAVES"
+                + "BENEATHTHEOLDWATCHTOWERWHERENOONEWOULDTHINKTOLOOK");
+        KeySearch search = new KeySearch(spec);
+        assertEquals(2 * 24, search.numOrders());
+        List<KeySearch.Candidate> best = search.search(cipher, 120, 3);
+        assertEquals(3, best.size());
+        assertEquals("* C III I IV QMZ", best.get(0).toString());
+        assertTrue(best.get(0).score() > 0.055);
+        assertTrue(best.get(1).score() <= best.get(0).score());
+    }
+}
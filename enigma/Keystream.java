@@ -0,0 +1,120 @@
+package enigma;
+
+/** The complete sequence of substitutions performed by one machine
+ *  configuration (choice of rotors, positions of the non-moving rotors,
+ *  and plugboard), compiled over every combination of positions of its
+ *  moving rotors.  A combination of positions is encoded as a state
+ *  number whose digits, base the alphabet size, are the positions of the
+ *  moving rotors, the rightmost rotor being the least significant.
+ *  Converting a message is then a walk through the successor table.
+ *  @author Melissa Ly
+ */
+class Keystream {
+
+    /** An empty keystream, to be filled in with set and setNext, for an
+     *  alphabet of SIZE characters whose moving rotors start at slot
+     *  FIRST and have STATES combinations of positions.  Conversions are
+     *  held as bytes when SIZE is at most 256, and otherwise as chars. */
+    Keystream(int size, int first, int states) {
+        _size = size;
+        _first = first;
+        _next = new int[states];
+        if (size <= BYTE_LIMIT) {
+            _bytes = new byte[states * size];
+            _chars = null;
+        } else {
+            _bytes = null;
+            _chars = new char[states * size];
+        }
+    }
+
+    /** Return the approximate number of bytes of table occupied by a
+     *  keystream for an alphabet of SIZE characters with STATES
+     *  states. */
+    static long bytes(int size, long states) {
+        int entry = size <= BYTE_LIMIT ? Byte.BYTES : Character.BYTES;
+        return states * (Integer.BYTES + (long) size * entry);
+    }
+
+    /** Return true iff a keystream for an alphabet of SIZE characters
+     *  with STATES states can be held in arrays. */
+    static boolean fits(int size, long states) {
+        return states * size <= MAX_ENTRIES;
+    }
+
+    /** Record that C (an index into the alphabet) converts to VALUE in
+     *  STATE. */
+    void set(int state, int c, int value) {
+        if (_bytes != null) {
+            _bytes[state * _size + c] = (byte) value;
+        } else {
+            _chars[state * _size + c] = (char) value;
+        }
+    }
+
+    /** Record that NEXT follows STATE. */
+    void setNext(int state, int next) {
+        _next[state] = next;
+    }
+
+    /** Return the state number of POSITIONS, an array of the positions of
+     *  all rotors of a machine. */
+    int state(int[] positions) {
+        int state = 0;
+        for (int i = _first; i < positions.length; i += 1) {
+            state = state * _size + positions[i];
+        }
+        return state;
+    }
+
+    /** Set the positions of the moving rotors in POSITIONS to those
+     *  encoded by STATE. */
+    void positions(int state, int[] positions) {
+        for (int i = positions.length - 1; i >= _first; i -= 1) {
+            positions[i] = state % _size;
+            state /= _size;
+        }
+    }
+
+    /** Return the state that follows STATE. */
+    int next(int state) {
+        return _next[state];
+    }
+
+    /** Return the conversion of C (an index into the alphabet) in
+     *  STATE. */
+    int convert(int state, int c) {
+        if (_bytes != null) {
+            return _bytes[state * _size + c] & BYTE_MASK;
+        }
+        return _chars[state * _size + c];
+    }
+
+    /** Return the approximate number of bytes of table I occupy. */
+    long bytes() {
+        return bytes(_size, _next.length);
+    }
+
+    /** Size of my alphabet. */
+    private final int _size;
+    /** Slot of the leftmost moving rotor. */
+    private final int _first;
+    /** Successor of each state. */
+    private final int[] _next;
+    /** Conversion of each character in each state, for alphabets of at
+     *  most BYTE_LIMIT characters (otherwise null). */
+    private final byte[] _bytes;
+    /** Conversion of each character in each state, for larger alphabets
+     *  (otherwise null). */
+    private final char[] _chars;
+
+    /** Largest alphabet whose conversions are held as bytes. */
+    static final int BYTE_LIMIT = 256;
+
+    /** Largest number of conversions in a keystream: the most that an
+     *  array indexed by state * size + c can hold. */
+    static final long MAX_ENTRIES = Integer.MAX_VALUE - 8;
+
+    /** Extracts an unsigned value from a byte. */
+    private static final int BYTE_MASK = 0xFF;
+}
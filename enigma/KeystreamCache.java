@@ -0,0 +1,70 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A least-recently-used cache of compiled Keystreams, bounded by the
+ *  total size of their tables.  May be shared among Machines and
+ *  threads.
+ *  @author Melissa Ly
+ */
+class KeystreamCache {
+
+    /** A cache holding at most MAXBYTES bytes of keystream tables. */
+    KeystreamCache(long maxBytes) {
+        _maxBytes = maxBytes;
+    }
+
+    /** Return the maximum number of bytes of tables I hold. */
+    long maxBytes() {
+        return _maxBytes;
+    }
+
+    /** Return the number of bytes of tables I currently hold. */
+    synchronized long bytes() {
+        return _bytes;
+    }
+
+    /** Return the number of keystreams I currently hold. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return the keystream cached under KEY, or null if there is none.
+     *  Marks it as most recently used. */
+    synchronized Keystream get(Object key) {
+        return _entries.get(key);
+    }
+
+    /** Cache KEYSTREAM under KEY, evicting least recently used entries as
+     *  needed to stay within maxBytes().  Does nothing if KEYSTREAM alone
+     *  is larger than that. */
+    synchronized void put(Object key, Keystream keystream) {
+        if (keystream.bytes() > _maxBytes) {
+            return;
+        }
+        Keystream old = _entries.put(key, keystream);
+        if (old != null) {
+            _bytes -= old.bytes();
+        }
+        _bytes += keystream.bytes();
+        Iterator<Map.Entry<Object, Keystream>> eldest =
+            _entries.entrySet().iterator();
+        while (_bytes > _maxBytes) {
+            Map.Entry<Object, Keystream> entry = eldest.next();
+            _bytes -= entry.getValue().bytes();
+            eldest.remove();
+        }
+    }
+
+    /** Maximum total size of cached tables. */
+    private final long _maxBytes;
+
+    /** Total size of cached tables. */
+    private long _bytes;
+
+    /** Cached keystreams, in order of last access. */
+    private final LinkedHashMap<Object, Keystream> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+}
@@ -0,0 +1,58 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the LaneConverter class.
+ *  @author Melissa Ly
+ */
+public class LaneConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void testLaneConvert() {
+        Machine template = navalMachine("AAAA", "(HQ) (EX) (IP) (TR) (BY)");
+        Random random = new Random(19);
+        String[] settings = new String[37], messages = new String[37];
+        String[] expected = new String[messages.length];
+        for (int i = 0; i < messages.length; i += 1) {
+            char[] posn = new char[4];
+            for (int j = 0; j < posn.length; j += 1) {
+                posn[j] = (char) ('A' + random.nextInt(26));
+            }
+            settings[i] = new String(posn);
+            messages[i] = randomMessage(UPPER, random.nextInt(700));
+            expected[i] = navalMachine(settings[i], "(HQ) (EX) (IP) (TR) (BY)")
+                .convert(messages[i]);
+        }
+        assertArrayEquals(expected,
+                new LaneConverter(template, 8).convert(settings, messages));
+    }
+
+    @Test
+    public void testLaneConvertManyPawls() {
+        Machine template = pawlSpec(5).newMachine();
+        template.insertRotors(new String[] {"B", "V", "I", "II", "III", "IV"});
+        template.setRotors("AAAAA");
+        String[] settings = {"QEVJZ", "AEVJY", "ZZZZZ", "DVJZY", "AQAEV"};
+        String[] messages = new String[settings.length];
+        String[] expected = new String[settings.length];
+        for (int i = 0; i < settings.length; i += 1) {
+            messages[i] = randomMessage(UPPER, 2000 + i);
+            Machine machine = template.copy();
+            machine.setRotors(settings[i]);
+            expected[i] = machine.convert(messages[i]);
+        }
+        assertArrayEquals(expected,
+                new LaneConverter(template, 4).convert(settings, messages));
+    }
+}
@@ -1,7 +1,14 @@
 package enigma;
 
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 
 import static enigma.EnigmaException.*;
 
@@ -10,19 +17,14 @@ import static enigma.EnigmaException.*;
  */
 class Machine {
     /**
-     * Common alphabet of my rotors.
+     * The shared description of my alphabet and available rotors.
      */
-    private final Alphabet _alphabet;
+    private final MachineSpec _spec;
 
     /**
      * Common alphabet of my rotors.
      */
-    private int _numRotor;
-
-    /**
-     * Common rotor pawls.
-     */
-    private int _pawl;
+    private final Alphabet _alphabet;
 
     /**
      * Initial settings of the rotor.
@@ -30,12 +32,49 @@ class Machine {
 
     private Permutation _plugboard;
 
-    /** An arraylist of Rotors where I can get
-     * named Rotors and insert Rotors. */
-    private ArrayList<Rotor> _myrotor;
+    /** The rotors in my slots, reflector first. */
+    private Rotor[] _slots;
+
+    /** _positions[i] is the current setting of the rotor in slot i. */
+    private int[] _positions;
+
+    /** _notches[i] is a bitmask of the positions at which the rotor in
+     *  slot i has a notch: bit k of word k / 64 is set iff position k
+     *  is a notch.  Empty for non-moving rotors. */
+    private long[][] _notches;
+
+    /** Number of upcoming steps in which only the rightmost rotor can
+     *  move, because no rotor to its left is at a notch and the rightmost
+     *  rotor will not reach one before then. */
+    private int _quietSteps;
+
+    /** True iff I convert through the cached tables (see setFused). */
+    private boolean _fused = true;
 
-    /** Rotor Array of all rotors. */
-    private Rotor[] _allRotors;
+    /** In fused mode, the substitution performed by all rotors except the
+     *  rightmost at their current positions, valid iff _coreValid. */
+    private char[] _core;
+
+    /** In fused mode, the substitution performed by all rotors except the
+     *  two rightmost at their current positions, valid iff _outerValid.
+     *  _core is rebuilt from it when the second rotor from the right
+     *  moves. */
+    private char[] _outer;
+
+    /** True iff _core and _outer, respectively, are up to date. */
+    private boolean _coreValid, _outerValid;
+
+    /** In fused mode, _entry[p * size + c] is the result of passing C
+     *  through the plugboard and then the rightmost rotor at position p,
+     *  and _exit[p * size + c] that of passing C back through the
+     *  rightmost rotor at position p and then the plugboard.  Null when
+     *  they must be recomputed or my alphabet is larger than
+     *  FUSED_TABLE_LIMIT, which lets them be held as unsigned bytes. */
+    private byte[] _entry, _exit;
+
+    /** Source of compiled keystreams for bulk conversion, or null if
+     *  they are not used. */
+    private KeystreamCache _keystreams;
 
 
     /**
@@ -45,30 +84,68 @@ class Machine {
      */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
-        _alphabet = alpha;
-        _numRotor = numRotors;
-        _pawl = pawls;
-        _allRotors = new Rotor[allRotors.size()];
-        int i = 0;
-        for (Rotor r: allRotors) {
-            _allRotors[i] = r;
-            i++;
-        }
+        this(new MachineSpec(alpha, numRotors, pawls, allRotors));
+    }
 
+    /**
+     * A new Enigma machine built to SPEC, with no rotors inserted.
+     */
+    Machine(MachineSpec spec) {
+        _spec = spec;
+        _alphabet = spec.alphabet();
+    }
+
+    /**
+     * Return a new machine with the same spec, inserted rotors, rotor
+     * positions, plugboard and modes as mine, whose state then evolves
+     * independently of mine.
+     */
+    Machine copy() {
+        Machine result = new Machine(_spec);
+        result._plugboard = _plugboard;
+        result._slots = _slots;
+        result._notches = _notches;
+        result._positions = _positions == null ? null : _positions.clone();
+        result._fused = _fused;
+        result._entry = _entry;
+        result._exit = _exit;
+        result._keystreams = _keystreams;
+        return result;
+    }
+
+    /**
+     * Return the spec to which I was built.
+     */
+    MachineSpec spec() {
+        return _spec;
     }
 
     /**
      * Return the number of rotor slots I have.
      */
     int numRotors() {
-        return _numRotor;
+        return _spec.numRotors();
     }
 
     /**
      * Return the number pawls (and thus rotating rotors) I have.
      */
     int numPawls() {
-        return _pawl;
+        return _spec.numPawls();
+    }
+
+    /**
+     * Return the rotor in SLOT (0 for the reflector).
+     */
+    Rotor rotor(int slot) {
+        return _slots[slot];
+    }
+
+    /**
+     * Return my plugboard, or null if none has been set.
+     */
+    Permutation plugboard() {
+        return _plugboard;
     }
 
     /**
@@ -77,28 +154,29 @@ class Machine {
      * Initially, all rotors are set at their 0 setting.
      */
     void insertRotors(String[] rotors) {
-        _myrotor = new ArrayList<>();
-        ArrayList<String> rotorNames = new ArrayList<>();
-        for (String s: rotors) {
-            for (Rotor j : _allRotors) {
-                if (s.equals(j.name())) {
-                    j.set(0);
-                    _myrotor.add(j);
-                    if (rotorNames.contains(s)) {
-                        throw new EnigmaException(
-                                "Duplicate Rotor names passed.");
-                    } else {
-                        rotorNames.add(s);
-                    }
+        Rotor[] slots = new Rotor[rotors.length];
+        long[][] notches = new long[rotors.length][];
+        for (int i = 0; i < rotors.length; i += 1) {
+            slots[i] = _spec.rotor(rotors[i]);
+            if (slots[i] == null) {
+                throw new EnigmaException("bad rotor name");
+            }
+            for (int j = 0; j < i; j += 1) {
+                if (slots[j] == slots[i]) {
+                    throw new EnigmaException(
+                            "Duplicate Rotor names passed.");
                 }
             }
+            notches[i] = _spec.notches(rotors[i]);
         }
-        if (_myrotor.size() != rotors.length) {
-            throw new EnigmaException("bad rotor name");
-        }
+        _slots = slots;
+        _notches = notches;
+        _positions = new int[slots.length];
+        _quietSteps = 0;
+        _coreValid = _outerValid = false;
+        _entry = _exit = null;
     }
 
-
     /**
      * Set my rotors according to SETTING, which must be a string of four
      * upper-case letters. The first letter refers to the leftmost
@@ -108,34 +186,85 @@ class Machine {
         if (setting.length() != (numRotors() - 1)) {
             throw new EnigmaException("Wheel settings too short");
         }
-        if (!_myrotor.get(0).reflecting()) {
+        if (!_slots[0].reflecting()) {
             throw new EnigmaException("Reflector is missing.");
-        } else {
-            if (setting.length() == (numRotors() - 1)) {
-                for (int i = 1; i < _myrotor.size(); i++) {
-                    if (i >= 1 && i < numRotors() - numPawls()) {
-                        if (!_myrotor.get(i).reflecting()
-                                && !_myrotor.get(i).rotates()) {
-                            _myrotor.get(i).set(_alphabet.toInt
-                                    (setting.charAt(i - 1)));
-                        } else {
-                            throw new EnigmaException("Non-moving rotor"
-                                    + " slots mismatched.");
-                        }
-                    } else if (i >= numRotors() - numPawls()) {
-                        if (_myrotor.get(i).rotates()) {
-                            _myrotor.get(i).set(_alphabet.toInt
-                                    (setting.charAt(i - 1)));
-                        } else {
-                            throw new EnigmaException("Moving rotor"
-                                    + " slots mismatched.");
-                        }
-                    }
+        }
+        for (int i = 1; i < _slots.length; i++) {
+            if (i < numRotors() - numPawls()) {
+                if (_slots[i].reflecting() || _slots[i].rotates()) {
+                    throw new EnigmaException("Non-moving rotor"
+                            + " slots mismatched.");
                 }
-            } else {
-                throw new EnigmaException("Wrong length of settings.");
+            } else if (!_slots[i].rotates()) {
+                throw new EnigmaException("Moving rotor"
+                        + " slots mismatched.");
             }
+            _positions[i] = _alphabet.toInt(setting.charAt(i - 1));
         }
+        _quietSteps = 0;
+        _coreValid = _outerValid = false;
+    }
+
+    /**
+     * Set the ring settings of my rotors according to RINGS, a string
+     * of numRotors() - 1 characters of my alphabet in the form accepted
+     * by setRotors: the first refers to the leftmost rotor, not counting
+     * the reflector.  The rings stay as set until rotors are inserted.
+     */
+    void setRings(String rings) {
+        if (rings.length() != (numRotors() - 1)) {
+            throw new EnigmaException("Ring settings too short");
+        }
+        for (int i = 1; i < _slots.length; i += 1) {
+            setRing(i, _alphabet.toInt(rings.charAt(i - 1)));
+        }
+    }
+
+    /**
+     * Set the ring setting of the rotor in SLOT to RING (an index into
+     * my alphabet).  Only the rotor and the cached tables that depend on
+     * it are replaced, so a search may sweep ring settings on one
+     * machine.
+     */
+    void setRing(int slot, int ring) {
+        Rotor rotor = _slots[slot].withRing(ring);
+        if (rotor == _slots[slot]) {
+            return;
+        }
+        _slots = _slots.clone();
+        _slots[slot] = rotor;
+        _coreValid = _outerValid = false;
+        if (slot == _slots.length - 1) {
+            _entry = _exit = null;
+        }
+    }
+
+    /**
+     * Set the rotor in SLOT to position POSN (an index into my alphabet)
+     * without the checks made by setRotors, for callers that step
+     * through many positions of an already validated setup.
+     */
+    void setPosition(int slot, int posn) {
+        _positions[slot] = posn;
+        _quietSteps = 0;
+        _coreValid = _outerValid = false;
+    }
+
+    /** Return the current position of the rotor in SLOT. */
+    int position(int slot) {
+        return _positions[slot];
+    }
+
+    /**
+     * Return the current settings of my rotors, not counting the
+     * reflector, in the form accepted by setRotors.
+     */
+    String settings() {
+        char[] result = new char[_slots.length - 1];
+        for (int i = 1; i < _slots.length; i += 1) {
+            result[i - 1] = _alphabet.toChar(_positions[i]);
+        }
+        return new String(result);
     }
 
     /**
@@ -143,6 +272,98 @@ class Machine {
      */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
+        _entry = _exit = null;
+        _coreValid = false;
+    }
+
+    /**
+     * Turn the fused conversion mode on or off according to FUSED.  In
+     * fused mode (the default), the substitution performed by all rotors
+     * but the rightmost one, including the reflector, is cached as a
+     * single table that is rebuilt only when one of those rotors moves,
+     * and the plugboard is folded into per-position tables for the
+     * rightmost rotor, so that converting a character takes three array
+     * lookups.  The results are the same in either mode.
+     */
+    void setFused(boolean fused) {
+        _fused = fused;
+        _coreValid = _outerValid = false;
+        _entry = _exit = null;
+    }
+
+    /**
+     * Use compiled keystreams from CACHE for bulk conversions, compiling
+     * and caching the keystream of my current configuration if it is not
+     * already present.  A null CACHE turns this mode off (the default).
+     * Because a keystream covers every position of the moving rotors,
+     * any later message converted under the same rotors, non-moving rotor
+     * positions and plugboard is a walk through its tables.
+     */
+    void setKeystreamCache(KeystreamCache cache) {
+        _keystreams = cache;
+    }
+
+    /** Return the keystream for my current configuration from my
+     *  keystream cache, compiling it if necessary, or null if I have no
+     *  cache or the keystream would not fit in it or in arrays. */
+    private Keystream keystream() {
+        if (_keystreams == null) {
+            return null;
+        }
+        int size = _alphabet.size(), first = numRotors() - numPawls();
+        long states = 1;
+        for (int i = first; i < _slots.length; i += 1) {
+            states *= size;
+            if (!Keystream.fits(size, states)
+                || Keystream.bytes(size, states) > _keystreams.maxBytes()) {
+                return null;
+            }
+        }
+        StringBuilder config = new StringBuilder();
+        config.append(numPawls()).append(':');
+        for (int i = 0; i < first; i += 1) {
+            config.append(_alphabet.toChar(_positions[i]));
+        }
+        config.append(':');
+        for (int c = 0; _plugboard != null && c < size; c += 1) {
+            config.append(_alphabet.toChar(_plugboard.permute(c)));
+        }
+        List<Object> key = new ArrayList<>(Arrays.asList(_slots));
+        key.add(config.toString());
+        Keystream result = _keystreams.get(key);
+        if (result == null) {
+            result = compileKeystream((int) states);
+            _keystreams.put(key, result);
+        }
+        return result;
+    }
+
+    /** Return the keystream of my current configuration, which has STATES
+     *  combinations of moving rotor positions.  Leaves my rotor positions
+     *  unchanged. */
+    private Keystream compileKeystream(int states) {
+        int size = _alphabet.size(), first = numRotors() - numPawls();
+        int[] saved = _positions.clone();
+        boolean fused = _fused;
+        Keystream result = new Keystream(size, first, states);
+        _fused = true;
+        for (int s = 0; s < states; s += 1) {
+            result.positions(s, _positions);
+            if (s % size == 0) {
+                _coreValid = _outerValid = false;
+            }
+            for (int c = 0; c < size; c += 1) {
+                result.set(s, c, convertFused(c));
+            }
+            _quietSteps = 0;
+            advanceRotors();
+            result.setNext(s, result.state(_positions));
+        }
+        _fused = fused;
+        System.arraycopy(saved, 0, _positions, 0, saved.length);
+        _quietSteps = 0;
+        _coreValid = _outerValid = false;
+        return result;
     }
 
     /**
@@ -152,17 +373,33 @@ class Machine {
      */
     int convert(int c) {
         advanceRotors();
-        c = c % _alphabet.size();
+        return convertHere(c % _alphabet.size());
+    }
+
+    /** Store in PERM[BASE .. BASE + size - 1] the substitution that I
+     *  perform, plugboard included, at the current rotor positions,
+     *  without advancing the rotors: PERM[BASE + x] is the conversion
+     *  of x. */
+    void substitution(int[] perm, int base) {
+        for (int x = 0; x < _alphabet.size(); x += 1) {
+            perm[base + x] = convertHere(x);
+        }
+    }
+
+    /** Return the conversion of C (an index into my alphabet) at the
+     *  current rotor positions. */
+    private int convertHere(int c) {
+        if (_fused) {
+            return convertFused(c);
+        }
         if (_plugboard != null) {
             c = _plugboard.permute(c);
         }
-        for (int i = _myrotor.size() - 1; i >= 0; i--) {
-            Rotor forwardRotor = _myrotor.get(i);
-            c = forwardRotor.convertForward(c);
+        for (int i = _slots.length - 1; i >= 0; i--) {
+            c = _slots[i].convertForward(c, _positions[i]);
         }
-        for (int m = 1; m < _myrotor.size(); m++) {
-            Rotor backwardRotor = _myrotor.get(m);
-            c = backwardRotor.convertBackward(c);
+        for (int m = 1; m < _slots.length; m++) {
+            c = _slots[m].convertBackward(c, _positions[m]);
         }
         if (_plugboard != null) {
             c = _plugboard.permute(c);
@@ -171,29 +408,210 @@ class Machine {
 
     }
 
+    /** Return the conversion of C at the current rotor positions using
+     *  the cached tables described at setFused. */
+    private int convertFused(int c) {
+        if (!_coreValid) {
+            buildCore();
+        }
+        int fast = _slots.length - 1, posn = _positions[fast];
+        if (_entry != null) {
+            int base = posn * _alphabet.size();
+            return _exit[base + _core[_entry[base + c] & BYTE_MASK]]
+                & BYTE_MASK;
+        }
+        if (_plugboard != null) {
+            c = _plugboard.permute(c);
+        }
+        c = _core[_slots[fast].convertForward(c, posn)];
+        c = _slots[fast].convertBackward(c, posn);
+        if (_plugboard != null) {
+            c = _plugboard.permute(c);
+        }
+        return c;
+    }
+
+    /** Recompute _core for the current positions of all rotors but the
+     *  rightmost, rebuilding _outer first if needed, and build the
+     *  rightmost rotor's tables if they are missing and my alphabet is
+     *  small enough to have them. */
+    private void buildCore() {
+        int size = _alphabet.size(), fast = _slots.length - 1;
+        int mid = fast - 1;
+        if (_core == null || _core.length != size) {
+            _core = new char[size];
+            _outer = new char[size];
+        }
+        if (mid == 0) {
+            for (int x = 0; x < size; x += 1) {
+                _core[x] = (char) _slots[0].convertForward(x, _positions[0]);
+            }
+        } else {
+            if (!_outerValid) {
+                for (int x = 0; x < size; x += 1) {
+                    int y = x;
+                    for (int i = mid - 1; i >= 0; i -= 1) {
+                        y = _slots[i].convertForward(y, _positions[i]);
+                    }
+                    for (int i = 1; i < mid; i += 1) {
+                        y = _slots[i].convertBackward(y, _positions[i]);
+                    }
+                    _outer[x] = (char) y;
+                }
+                _outerValid = true;
+            }
+            Rotor middle = _slots[mid];
+            int posn = _positions[mid];
+            for (int x = 0; x < size; x += 1) {
+                _core[x] = (char) middle.convertBackward(
+                        _outer[middle.convertForward(x, posn)], posn);
+            }
+        }
+        _coreValid = true;
+        if (_entry == null && size <= FUSED_TABLE_LIMIT) {
+            byte[] entry = new byte[size * size];
+            byte[] exit = new byte[size * size];
+            Rotor rotor = _slots[fast];
+            for (int posn = 0; posn < size; posn += 1) {
+                int base = posn * size;
+                for (int x = 0; x < size; x += 1) {
+                    int p = _plugboard == null ? x : _plugboard.permute(x);
+                    entry[base + x] = (byte) rotor.convertForward(p, posn);
+                    int e = rotor.convertBackward(x, posn);
+                    exit[base + x] = (byte)
+                        (_plugboard == null ? e : _plugboard.permute(e));
+                }
+            }
+            _entry = entry;
+            _exit = exit;
+        }
+    }
+
     /** Helper to allow me to advance my rotors and
-     * double-stepping is checker here. */
+     * double-stepping is checker here, by the rule of steps.  Notches
+     * are tested against the positions before any rotor moves. */
     void advanceRotors() {
-        ArrayList<Rotor> moving = new ArrayList<>();
-        for (int i = numRotors() - numPawls(); i < numRotors(); i++) {
-            Rotor currentRotor = _myrotor.get(i);
-            if (i == (numRotors() - 1)) {
-                moving.add(currentRotor);
-            } else if (_myrotor.get(i + 1).atNotch()
-                        || moving.contains(_myrotor.get(i - 1))) {
-                if (!moving.contains(currentRotor)) {
-                    moving.add(currentRotor);
+        int first = numRotors() - numPawls(), last = numRotors() - 1;
+        int size = _alphabet.size();
+        if (_quietSteps > 0) {
+            _quietSteps -= 1;
+            int next = _positions[last] + 1;
+            _positions[last] = next == size ? 0 : next;
+            return;
+        }
+        boolean notchHere = false;
+        boolean quiet = true;
+        int carries = 0, doubles = 0;
+        for (int i = first; i <= last; i += 1) {
+            boolean notchRight = i < last && atNotch(i + 1);
+            if (steps(i, first, last, notchHere, notchRight)) {
+                int next = _positions[i] + 1;
+                _positions[i] = next == size ? 0 : next;
+                if (i < last - 1) {
+                    _outerValid = false;
                 }
-                if (_myrotor.get(i).atNotch()) {
-                    if (!moving.contains(_myrotor.get(i - 1))) {
-                        moving.add(_myrotor.get(i - 1));
+                if (i < last) {
+                    _coreValid = false;
+                    if (notchRight) {
+                        carries += 1;
+                    } else {
+                        doubles += 1;
                     }
                 }
             }
+            if (i > first && i < last && atNotch(i)) {
+                quiet = false;
+            }
+            notchHere = notchRight;
+        }
+        Metrics.rotorStep(carries, doubles);
+        if (quiet && first <= last) {
+            int distance = _slots[last].positionsToNotch(_positions[last]);
+            _quietSteps = distance < 0 ? Integer.MAX_VALUE : distance;
+        }
+    }
+
+    /** Return true iff the moving rotor in SLOT advances in a step of a
+     *  machine whose moving rotors are in slots FIRST .. LAST, where
+     *  NOTCHHERE tells whether the rotor is at a notch (it is not
+     *  consulted for slot FIRST) and NOTCHRIGHT whether the rotor to its
+     *  right is.  The rightmost rotor always advances; any other
+     *  advances when the pawl to its right drops into the notch of the
+     *  rotor to its right, or when it is itself at a notch and the
+     *  rotor to its left has a pawl, which then pushes the notch along
+     *  (double stepping).  This is the one statement of the stepping
+     *  rule, shared with LaneConverter. */
+    static boolean steps(int slot, int first, int last, boolean notchHere,
+                         boolean notchRight) {
+        return slot == last || notchRight || (slot > first && notchHere);
+    }
+
+    /** Advance my rotors as if STEPS characters had been converted,
+     *  without converting anything.  Runs of steps in which only the
+     *  rightmost rotor moves are taken in a single addition, and once the
+     *  rotor positions are seen to repeat, STEPS is reduced modulo the
+     *  period of the machine, so the cost is bounded by the number of
+     *  notch events in one period rather than by STEPS. */
+    void seek(long steps) {
+        int last = numRotors() - 1, size = _alphabet.size();
+        boolean numbered = true;
+        long states = 1;
+        for (int i = numRotors() - numPawls(); i <= last; i += 1) {
+            if (states > Long.MAX_VALUE / size) {
+                numbered = false;
+                break;
+            }
+            states *= size;
+        }
+        HashMap<Object, Long> seen = new HashMap<>();
+        while (steps > 0) {
+            if (_quietSteps > 0) {
+                long skip = Math.min(steps, _quietSteps);
+                _positions[last] = (int) ((_positions[last] + skip) % size);
+                _quietSteps -= skip;
+                steps -= skip;
+                continue;
+            }
+            if (seen != null) {
+                Long earlier = seen.put(positionKey(numbered), steps);
+                if (earlier != null) {
+                    steps %= earlier - steps;
+                    seen = null;
+                    continue;
+                } else if (seen.size() > SEEK_HISTORY_LIMIT) {
+                    seen = null;
+                }
+            }
+            advanceRotors();
+            steps -= 1;
         }
-        for (Rotor r: moving) {
-            r.advance();
+        _coreValid = _outerValid = false;
+    }
+
+    /** Return a key that identifies the current positions of my moving
+     *  rotors: if NUMBERED, which requires that every combination of
+     *  positions have a number that fits in a long, their number, base
+     *  the alphabet size; otherwise, a copy of the positions, compared by
+     *  content. */
+    private Object positionKey(boolean numbered) {
+        int first = numRotors() - numPawls();
+        if (!numbered) {
+            return IntBuffer.wrap(Arrays.copyOfRange(_positions, first,
+                                                     _slots.length));
         }
+        long code = 0;
+        for (int i = first; i < _slots.length; i += 1) {
+            code = code * _alphabet.size() + _positions[i];
+        }
+        return code;
+    }
+
+    /** Return true iff the rotor in SLOT is at one of its notches. */
+    private boolean atNotch(int slot) {
+        long[] mask = _notches[slot];
+        int posn = _positions[slot];
+        int word = posn / Long.SIZE;
+        return word < mask.length && (mask[word] & (1L << posn)) != 0;
     }
 
     /**
@@ -201,11 +619,102 @@ class Machine {
      * the rotors accordingly.
      */
     String convert(String msg) {
-        String converting = "";
-        for (int i = 0; i < msg.length(); i++) {
-            converting +=
-                    _alphabet.toChar(convert(_alphabet.toInt(msg.charAt(i))));
+        char[] buffer = msg.toCharArray();
+        convert(buffer, 0, buffer, 0, buffer.length);
+        return new String(buffer);
+    }
+
+    /**
+     * Convert the LEN characters of SRC starting at SRCPOS, storing the
+     * results into DEST starting at DESTPOS and updating the state of the
+     * rotors accordingly.  SRC and DEST may be the same array, in which
+     * case the conversion is done in place.
+     */
+    void convert(char[] src, int srcPos, char[] dest, int destPos, int len) {
+        long start = Metrics.start();
+        convertBlock(src, srcPos, dest, destPos, len);
+        if (start != 0) {
+            Metrics.converted(len);
+            Metrics.record(Metrics.Stage.CONVERT, start);
         }
-        return converting;
     }
+
+    /** Perform convert(SRC, SRCPOS, DEST, DESTPOS, LEN). */
+    private void convertBlock(char[] src, int srcPos, char[] dest,
+                              int destPos, int len) {
+        Keystream keystream = keystream();
+        if (keystream != null) {
+            int state = keystream.state(_positions);
+            for (int i = 0; i < len; i += 1) {
+                state = keystream.next(state);
+                dest[destPos + i] = _alphabet.toChar(keystream.convert(
+                        state, _alphabet.toInt(src[srcPos + i])));
+            }
+            keystream.positions(state, _positions);
+            _quietSteps = 0;
+            _coreValid = _outerValid = false;
+            return;
+        }
+        for (int i = 0; i < len; i += 1) {
+            dest[destPos + i] = _alphabet.toChar(
+                    convert(_alphabet.toInt(src[srcPos + i])));
+        }
+    }
+
+    /**
+     * Convert the remaining characters of SRC, writing the results to
+     * DEST.  Both buffers advance by the number of characters converted,
+     * which is the smaller of their remaining counts.
+     */
+    void convert(CharBuffer src, CharBuffer dest) {
+        int len = Math.min(src.remaining(), dest.remaining());
+        if (src.hasArray() && dest.hasArray()) {
+            convert(src.array(), src.arrayOffset() + src.position(),
+                    dest.array(), dest.arrayOffset() + dest.position(), len);
+            src.position(src.position() + len);
+            dest.position(dest.position() + len);
+        } else {
+            for (int i = 0; i < len; i += 1) {
+                dest.put(_alphabet.toChar(convert(_alphabet.toInt(src.get()))));
+            }
+        }
+    }
+
+    /**
+     * Convert MSG, appending the results to OUT.  Output is handed to OUT
+     * in blocks of CHUNK_SIZE characters.
+     */
+    void convert(CharSequence msg, Appendable out) {
+        char[] chunk = new char[Math.min(CHUNK_SIZE, msg.length())];
+        CharBuffer view = CharBuffer.wrap(chunk);
+        try {
+            for (int start = 0; start < msg.length(); start += chunk.length) {
+                int len = Math.min(chunk.length, msg.length() - start);
+                for (int i = 0; i < len; i += 1) {
+                    chunk[i] = msg.charAt(start + i);
+                }
+                convert(chunk, 0, chunk, 0, len);
+                view.clear().limit(len);
+                out.append(view);
+            }
+        } catch (IOException excp) {
+            throw error("could not write converted message: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** Largest number of rotor positions remembered by seek while
+     *  looking for the period of the machine. */
+    static final int SEEK_HISTORY_LIMIT = 1 << 20;
+
+    /** Largest alphabet for which the rightmost rotor's per-position
+     *  tables are built in fused mode. */
+    static final int FUSED_TABLE_LIMIT = 256;
+
+    /** Extracts an unsigned value from a byte. */
+    private static final int BYTE_MASK = 0xFF;
+
+    /** Number of characters converted per block by
+     *  convert(CharSequence, Appendable). */
+    static final int CHUNK_SIZE = 1 << 16;
 }
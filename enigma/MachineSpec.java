@@ -0,0 +1,101 @@
+package enigma;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The immutable description of an Enigma machine: its alphabet, its
+ *  numbers of rotor slots and pawls, and the rotors available to it with
+ *  their wirings and notches.  A spec holds no rotor positions, so one
+ *  spec may be shared by any number of Machines, in any number of
+ *  threads, each Machine holding the state of one session.
+ *  @author Melissa Ly
+ */
+class MachineSpec {
+
+    /** A spec for machines with alphabet ALPHA, 1 < NUMROTORS rotor
+     *  slots, and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all
+     *  the available rotors. */
+    MachineSpec(Alphabet alpha, int numRotors, int pawls,
+                Collection<Rotor> allRotors) {
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        LinkedHashMap<String, Rotor> rotors = new LinkedHashMap<>();
+        HashMap<String, long[]> notches = new HashMap<>();
+        for (Rotor r : allRotors) {
+            rotors.put(r.name(), r);
+            notches.put(r.name(), notchMask(r));
+        }
+        _rotors = Collections.unmodifiableMap(rotors);
+        _notches = notches;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots of my machines. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls (and thus rotating rotors) of my
+     *  machines. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the available rotors. */
+    Collection<Rotor> rotors() {
+        return _rotors.values();
+    }
+
+    /** Return the available rotor named NAME, or null if there is
+     *  none. */
+    Rotor rotor(String name) {
+        return _rotors.get(name);
+    }
+
+    /** Return the notch bitmask of the available rotor named NAME: bit k
+     *  of word k / 64 is set iff position k is a notch.  Empty for
+     *  non-moving rotors.  The result must not be modified. */
+    long[] notches(String name) {
+        return _notches.get(name);
+    }
+
+    /** Return a new machine built to this spec, with no rotors
+     *  inserted. */
+    Machine newMachine() {
+        return new Machine(this);
+    }
+
+    /** Return the notch bitmask of ROTOR, as described for notches. */
+    private long[] notchMask(Rotor rotor) {
+        if (!rotor.rotates()) {
+            return new long[0];
+        }
+        int size = _alphabet.size();
+        long[] mask = new long[(size + Long.SIZE - 1) / Long.SIZE];
+        for (int posn = 0; posn < size; posn += 1) {
+            if (rotor.atNotch(posn)) {
+                mask[posn / Long.SIZE] |= 1L << posn;
+            }
+        }
+        return mask;
+    }
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Number of pawls. */
+    private final int _pawls;
+    /** Available rotors by name, in the order given. */
+    private final Map<String, Rotor> _rotors;
+    /** Notch bitmasks of the available rotors by name. */
+    private final HashMap<String, long[]> _notches;
+}
@@ -2,8 +2,19 @@ package enigma;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 import java.util.HashSet;
 import java.util.HashMap;
+import java.util.List;
+
+import static enigma.TestUtils.*;
 
 /** Tests for the enigma machine.
  *  @author Melissa Ly
@@ -72,4 +83,345 @@ public class MachineTest {
                         + "THISWASTHEMOSTEXTRAPROJEVERBYE",
                 finalRun1);
     }
+
+    @Test
+    public void testKnownMessage() {
+        Machine machine = navalMachine("AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                machine.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testBulkConvert() {
+        String msg = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        String expected = navalMachine("AXLE", "(AB)").convert(msg);
+
+        char[] dest = new char[msg.length() + 2];
+        navalMachine("AXLE", "(AB)").convert(msg.toCharArray(), 0,
+                dest, 2, msg.length());
+        assertEquals(expected, new String(dest, 2, msg.length()));
+
+        StringBuilder out = new StringBuilder();
+        navalMachine("AXLE", "(AB)").convert(msg, out);
+        assertEquals(expected, out.toString());
+
+        CharBuffer buffer = CharBuffer.allocate(msg.length());
+        navalMachine("AXLE", "(AB)").convert(CharBuffer.wrap(msg), buffer);
+        assertEquals(expected, new String(buffer.array()));
+    }
+
+    @Test
+    public void testDoubleStep() {
+        Machine machine = navalMachine("AADU", "");
+        machine.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        machine.setRotors("AADU");
+        String[] expected = {"AADV", "AAEW", "ABFX", "ABFY"};
+        for (String posn : expected) {
+            machine.advanceRotors();
+            assertEquals(posn, machine.settings());
+        }
+        machine.setRotors("AQEZ");
+        machine.advanceRotors();
+        assertEquals("ARFA", machine.settings());
+    }
+
+    @Test
+    public void testDoubleStepFourPawls() {
+        Machine machine = pawlSpec(4).newMachine();
+        machine.insertRotors(new String[] {"B", "I", "II", "III", "IV"});
+        machine.setRotors("AEUI");
+        String[] expected = {"BFUJ", "BFVK", "BGWL", "BGWM"};
+        for (String posn : expected) {
+            machine.advanceRotors();
+            assertEquals(posn, machine.settings());
+        }
+    }
+
+    @Test
+    public void testFusedMatchesUnfused() {
+        String msg = randomMessage(TestUtils.UPPER, 50000);
+        Machine fused = navalMachine("QEVZ", "(AQ) (EP) (XZ)");
+        Machine plain = navalMachine("QEVZ", "(AQ) (EP) (XZ)");
+        plain.setFused(false);
+        assertEquals(plain.convert(msg), fused.convert(msg));
+    }
+
+    @Test
+    public void testFusedLargeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = '\u0100'; c < '\u0100' + 300; c += 1) {
+            chars.append(c);
+        }
+        Alphabet alpha = new Alphabet(chars.toString());
+        String shifted = chars.substring(7) + chars.substring(0, 7);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        StringBuilder reflect = new StringBuilder();
+        for (int i = 0; i < 300; i += 2) {
+            reflect.append('(').append(chars.charAt(i))
+                .append(chars.charAt(i + 1)).append(')');
+        }
+        rotors.add(new Reflector("R",
+                new Permutation(reflect.toString(), alpha)));
+        rotors.add(new MovingRotor("X",
+                new Permutation("(" + shifted + ")", alpha),
+                chars.substring(5, 6)));
+        rotors.add(new MovingRotor("Y",
+                new Permutation("(" + chars.substring(3, 250) + ")", alpha),
+                chars.substring(0, 2)));
+        String setting = chars.substring(4, 5) + chars.substring(299);
+        String msg = randomMessage(alpha, 20000);
+        String[] results = new String[2];
+        for (int k = 0; k < 2; k += 1) {
+            Machine machine = new Machine(alpha, 3, 2, rotors);
+            machine.insertRotors(new String[] {"R", "X", "Y"});
+            machine.setRotors(setting);
+            machine.setFused(k == 0);
+            results[k] = machine.convert(msg);
+        }
+        assertEquals(results[1], results[0]);
+    }
+
+    @Test
+    public void testKeystreamCache() {
+        String msg = randomMessage(TestUtils.UPPER, 30000);
+        long keystream = Keystream.bytes(26, 26 * 26 * 26);
+        KeystreamCache cache = new KeystreamCache(2 * keystream
+                                                  + keystream / 2);
+        Machine cached = navalMachine("AXLE", "(HQ) (EX)");
+        cached.setKeystreamCache(cache);
+        assertEquals(navalMachine("AXLE", "(HQ) (EX)").convert(msg),
+                     cached.convert(msg));
+        assertEquals(1, cache.size());
+
+        Machine plain = navalMachine("AXLE", "(HQ) (EX)");
+        plain.convert(msg);
+        assertEquals(plain.settings(), cached.settings());
+        assertEquals(plain.convert(msg), cached.convert(msg));
+        assertEquals(1, cache.size());
+
+        cached.setRotors("BQEV");
+        plain.setRotors("BQEV");
+        assertEquals(plain.convert(msg), cached.convert(msg));
+        assertEquals(2, cache.size());
+
+        cached.setPlugboard(new Permutation("(AB)", TestUtils.UPPER));
+        cached.convert(msg);
+        assertEquals(2, cache.size());
+        assertTrue(cache.bytes() <= cache.maxBytes());
+    }
+
+    @Test
+    public void testKeystreamTooLargeForArrays() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = '\u0100'; c < '\u0100' + 300; c += 1) {
+            chars.append(c);
+        }
+        Alphabet alpha = new Alphabet(chars.toString());
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        StringBuilder reflect = new StringBuilder();
+        for (int i = 0; i < 300; i += 2) {
+            reflect.append('(').append(chars.charAt(i))
+                .append(chars.charAt(i + 1)).append(')');
+        }
+        rotors.add(new Reflector("R",
+                new Permutation(reflect.toString(), alpha)));
+        String[] names = {"X", "Y", "Z"};
+        for (int k = 0; k < names.length; k += 1) {
+            rotors.add(new MovingRotor(names[k],
+                    new Permutation("(" + chars.substring(k, 200 + k) + ")",
+                                    alpha),
+                    chars.substring(k, k + 1)));
+        }
+        String msg = randomMessage(alpha, 2000);
+        KeystreamCache cache = new KeystreamCache(Long.MAX_VALUE);
+        String[] results = new String[2];
+        for (int k = 0; k < 2; k += 1) {
+            Machine machine = new Machine(alpha, 4, 3, rotors);
+            machine.insertRotors(new String[] {"R", "X", "Y", "Z"});
+            machine.setRotors(chars.substring(0, 3));
+            machine.setKeystreamCache(k == 0 ? cache : null);
+            results[k] = machine.convert(msg);
+        }
+        assertEquals(results[1], results[0]);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSeek() {
+        long[] offsets = {0, 1, 25, 26, 650, 17000, 123457};
+        for (long offset : offsets) {
+            Machine stepped = navalMachine("AQEV", "(AB)");
+            Machine sought = navalMachine("AQEV", "(AB)");
+            for (long k = 0; k < offset; k += 1) {
+                stepped.advanceRotors();
+            }
+            sought.seek(offset);
+            assertEquals("offset " + offset, stepped.settings(),
+                         sought.settings());
+            assertEquals(stepped.convert("HELLOWORLD"),
+                         sought.convert("HELLOWORLD"));
+        }
+    }
+
+    @Test
+    public void testSeekManyPositions() {
+        StringBuilder letters = new StringBuilder();
+        for (char c = '\u4e00'; c < '\u4e00' + (1 << 13); c += 1) {
+            letters.append(c);
+        }
+        String chars = letters.toString();
+        Alphabet alpha = new Alphabet(chars);
+        StringBuilder reflect = new StringBuilder();
+        for (int i = 0; i < alpha.size(); i += 2) {
+            reflect.append('(').append(chars.charAt(i))
+                .append(chars.charAt(i + 1)).append(')');
+        }
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R",
+                new Permutation(reflect.toString(), alpha)));
+        String[] names = {"R", "S", "T", "U", "V", "W", "X"};
+        for (int k = 1; k < names.length; k += 1) {
+            String notches =
+                k == 1 ? "" : k == 2 ? chars.substring(0, 1) : chars;
+            rotors.add(new MovingRotor(names[k], new Permutation("", alpha),
+                                       notches));
+        }
+        long offset = 3 * alpha.size() + 5;
+        Machine stepped = new Machine(alpha, 7, 6, rotors);
+        stepped.insertRotors(names);
+        stepped.setRotors(chars.substring(0, 6));
+        Machine sought = stepped.copy();
+        for (long k = 0; k < offset; k += 1) {
+            stepped.advanceRotors();
+        }
+        sought.seek(offset);
+        assertEquals(stepped.settings(), sought.settings());
+    }
+
+    @Test
+    public void testSeekSplitsMessage() {
+        String msg = randomMessage(TestUtils.UPPER, 40000);
+        String whole = navalMachine("ZZZZ", "").convert(msg);
+        Machine tail = navalMachine("ZZZZ", "");
+        tail.seek(31234);
+        assertEquals(whole.substring(31234),
+                     tail.convert(msg.substring(31234)));
+    }
+
+    @Test
+    public void testParallelConvert() {
+        String msg = randomMessage(TestUtils.UPPER, 200000);
+        Machine sequential = navalMachine("AQEV", "(HQ) (EX) (IP)");
+        ParallelMachine parallel = new ParallelMachine(
+                navalMachine("AQEV", "(HQ) (EX) (IP)"),
+                new ForkJoinPool(4), 3001);
+        assertEquals(sequential.convert(msg), parallel.convert(msg));
+        assertEquals(sequential.settings(), parallel.machine().settings());
+        assertEquals(sequential.convert("ABCDEFG"),
+                     parallel.convert("ABCDEFG"));
+    }
+
+    @Test
+    public void testSharedSpec() throws InterruptedException {
+        MachineSpec spec = navalMachine("AAAA", "").spec();
+        String msg = randomMessage(TestUtils.UPPER, 20000);
+        String expected = navalMachine("AXLE", "(AB)").convert(msg);
+        String[] results = new String[4];
+        Thread[] threads = new Thread[results.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            final int k = t;
+            threads[t] = new Thread(() -> {
+                Machine machine = spec.newMachine();
+                machine.insertRotors(
+                        new String[] {"B", "Beta", "III", "IV", "I"});
+                machine.setRotors("AXLE");
+                machine.setPlugboard(new Permutation("(AB)", spec.alphabet()));
+                results[k] = machine.convert(msg);
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t += 1) {
+            threads[t].join();
+            assertEquals(expected, results[t]);
+        }
+    }
+
+    @Test
+    public void testCompiledConfig() throws IOException {
+        MachineSpec spec = navalMachine("AAAA", "").spec();
+        Path compiled = Files.createTempFile("enigma", ".compiled");
+        try {
+            byte[] hash = new byte[32];
+            CompiledConfig.write(compiled, hash, spec);
+            MachineSpec loaded = CompiledConfig.read(compiled, hash);
+            assertNotNull(loaded);
+            assertNull(CompiledConfig.read(compiled, new byte[] {1}));
+            Machine machine = loaded.newMachine();
+            machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+            machine.setRotors("AXLE");
+            machine.setPlugboard(new Permutation("(AB)", loaded.alphabet()));
+            String msg = randomMessage(TestUtils.UPPER, 5000);
+            assertEquals(navalMachine("AXLE", "(AB)").convert(msg),
+                         machine.convert(msg));
+        } finally {
+            Files.deleteIfExists(compiled);
+        }
+
+        Path dir = Files.createTempDirectory("enigma");
+        Path blocked = dir.resolve("blocked" + CompiledConfig.SUFFIX);
+        Path inside = blocked.resolve("file");
+        try {
+            Files.createDirectory(blocked);
+            Files.createFile(inside);
+            CompiledConfig.write(blocked, new byte[32], spec);
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(1, files.count());
+            }
+        } finally {
+            Files.deleteIfExists(inside);
+            Files.deleteIfExists(blocked);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testRingSettings() {
+        Alphabet alpha = TestUtils.UPPER;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] moving = {"I", "II", "III"};
+        String notches = "QEV";
+        for (int i = 0; i < moving.length; i += 1) {
+            rotors.add(new MovingRotor(moving[i],
+                    new Permutation(TestUtils.NAVALA.get(moving[i]), alpha),
+                    notches.substring(i, i + 1)));
+        }
+        rotors.add(new Reflector("UKW-B", new Permutation(
+                "(AY) (BR) (CU) (DH) (EQ) (FS) (GL) (IP) (JX) (KN) (MO) "
+                + "(TZ) (VW)", alpha)));
+        MachineSpec spec = new MachineSpec(alpha, 4, 3, rotors);
+        Machine machine = spec.newMachine();
+        machine.insertRotors(new String[] {"UKW-B", "I", "II", "III"});
+        machine.setRotors("AAA");
+        assertEquals("BDZGO", machine.convert("AAAAA"));
+        machine.setRotors("AAA");
+        machine.setRings("BBB");
+        assertEquals("EWTYX", machine.convert("AAAAA"));
+        machine.setRotors("AAA");
+        machine.setRing(1, 0);
+        machine.setRing(2, 0);
+        machine.setRing(3, 0);
+        assertEquals("BDZGO", machine.convert("AAAAA"));
+
+        Machine naval = navalMachine("AXLE", "(HQ) (EX)");
+        naval.setRings("SLBE");
+        String msg = randomMessage(alpha, 300);
+        String expected = naval.convert(msg);
+        naval.setFused(false);
+        naval.setRotors("AXLE");
+        assertEquals(expected, naval.convert(msg));
+        List<String> batch = new BatchConverter(naval.spec()).convert(
+                Arrays.asList(new BatchConverter.Message(
+                        "* B Beta III IV I AXLE SLBE (HQ) (EX)", msg)));
+        assertEquals(expected, batch.get(0));
+    }
 }
@@ -1,8 +1,17 @@
 package enigma;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -17,13 +26,27 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
-     *  ARGS[0] is the name of a configuration file.
-     *  ARGS[1] is optional; when present, it names an input file
+     *  specified by ARGS, which consists of options followed by 1 to 3
+     *  file names.
+     *  The first file is the name of a configuration file.
+     *  The second is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
-     *  input.  ARGS[2] is optional; when present, it names an output
+     *  input.  The third is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
-     *  standard output. Exits normally if there are no errors in the input;
+     *  standard output.  The option --ungrouped prints converted
+     *  messages without breaking them into groups of five.  The option
+     *  --pipeline[=N] reads, converts and writes on separate threads,
+     *  converting the messages under different settings lines
+     *  concurrently on N threads (by default, one per processor).
+     *  The option --config-cache keeps a compiled form of the
+     *  configuration next to it (see CompiledConfig) and loads that
+     *  instead of parsing the configuration while it is up to date.
+     *  The option --metrics collects counts and per-stage timings (see
+     *  Metrics) and prints them on the standard error at exit.
+     *  The option --server=PORT takes only the configuration file, and
+     *  instead of converting files serves requests on localhost port
+     *  PORT until killed (see Server for the protocol).
+     *  Exits normally if there are no errors in the input;
      *  otherwise with code 1. */
     public static void main(String... args) {
         try {
@@ -37,38 +60,112 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
-        if (args.length < 1 || args.length > 3) {
+        int first = 0;
+        boolean grouped = true;
+        while (first < args.length && args[first].startsWith("--")) {
+            switch (args[first]) {
+            case "--ungrouped":
+                grouped = false;
+                break;
+            case "--pipeline":
+                _threads = Runtime.getRuntime().availableProcessors();
+                break;
+            case "--config-cache":
+                _cacheConfig = true;
+                break;
+            case "--metrics":
+                Metrics.enable(true);
+                Metrics.dumpAtExit(System.err);
+                break;
+            default:
+                if (args[first].startsWith("--pipeline=")) {
+                    _threads = parseCount(args[first]);
+                } else if (args[first].startsWith("--server=")) {
+                    _port = parseCount(args[first]);
+                } else {
+                    throw error("unknown option %s", args[first]);
+                }
+            }
+            first += 1;
+        }
+        int files = args.length - first;
+        if (files < 1 || files > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        if (_port > 0 && files != 1) {
+            throw error("--server takes only a configuration file");
+        }
+        _grouped = grouped;
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
-        } else {
-            _input = new Scanner(System.in);
+        _configName = args[first];
+        try {
+            _config = getInput(_configName);
+            _opened.add(_config);
+            if (_port > 0) {
+                return;
+            }
+
+            if (files > 1) {
+                _input = getMessages(args[first + 1]);
+                _opened.add(_input::close);
+            } else {
+                _input = new MessageReader(Channels.newChannel(System.in));
+            }
+
+            if (files > 2) {
+                _output = new MessageWriter(getOutput(args[first + 2]),
+                                            grouped);
+                _opened.add(_output::close);
+            } else {
+                _output = new MessageWriter(
+                        new FileOutputStream(FileDescriptor.out).getChannel(),
+                        grouped);
+            }
+        } catch (EnigmaException excp) {
+            close();
+            throw excp;
         }
+    }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
-        } else {
-            _output = System.out;
+    /** Return the positive count following the '=' in OPTION. */
+    private static int parseCount(String option) {
+        try {
+            int count = Integer.parseInt(
+                    option.substring(option.indexOf('=') + 1));
+            if (count > 0) {
+                return count;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
         }
+        throw error("bad count in option %s", option);
     }
 
     /** Return a Scanner reading from the file named NAME. */
     private Scanner getInput(String name) {
         try {
-            return new Scanner(new File(name));
+            return new Scanner(new File(name), StandardCharsets.UTF_8);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a MessageReader reading from the file named NAME. */
+    private MessageReader getMessages(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new MessageReader(FileChannel.open(Paths.get(name)));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a channel writing to the file named NAME. */
+    private WritableByteChannel getOutput(String name) {
+        try {
+            return FileChannel.open(Paths.get(name),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -76,54 +173,102 @@ public final class Main {
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine M = readConfig();
-        String settings, line = "";
-        boolean setting;
-        while (_input.hasNextLine()) {
-            if (!_input.hasNext("\\s*[*].*")) {
-                throw new EnigmaException("Config beginning does not have *");
+     *  results to _output, or in server mode to requests on _port.
+     *  Closes the files I opened, once they are no longer needed. */
+    void process() {
+        if (_port > 0) {
+            Machine M;
+            try {
+                M = readConfig();
+            } finally {
+                close();
+            }
+            Server server =
+                new Server(M.spec(), _port, this::setUp, _grouped);
+            System.err.printf("Listening on port %d%n", server.port());
+            server.run();
+            return;
+        }
+        try {
+            Machine M = readConfig();
+            _input.setUpperCase(!_alphabet.hasLowerCase());
+            if (_threads > 0) {
+                new Pipeline(_input, _output, M, this::setUp, _threads).run();
             } else {
-                settings = "";
-                setting = false;
+                processMessages(M);
+            }
+        } finally {
+            try {
+                _output.flush();
+            } finally {
+                close();
+            }
+        }
+    }
 
-                while (!setting) {
-                    line = _input.nextLine();
-                    if (line.matches("[*].+")) {
-                        setting = true;
-                    } else {
-                        printMessageLine(line);
-                    }
-                }
-                int i = 0;
-                Scanner newLine = new Scanner(line);
-                while ((i < (M.numRotors() + 2))
-                        || newLine.hasNext("[(].+[)]")) {
-                    if (!newLine.hasNext()) {
-                        throw new EnigmaException("Not enough rotors passed.");
-                    }
-                    settings += newLine.next().replaceAll("[*]", "* ") + " ";
-                    i++;
+    /** Close the files that I opened by name, so that a program that
+     *  runs many Mains does not run out of descriptors or mappings.
+     *  The standard input and output are left open. */
+    void close() {
+        for (Closeable file : _opened) {
+            try {
+                file.close();
+            } catch (IOException | EnigmaException excp) {
+                /* Nothing more can be done with the file. */
+            }
+        }
+        _opened.clear();
+    }
+
+    /** Apply M to the messages in _input, sending the results to
+     *  _output. */
+    private void processMessages(Machine M) {
+        boolean configured = false;
+        char[] buffer = new char[MESSAGE_BUFFER];
+        while (_input.nextLine()) {
+            if (_input.isSettings()) {
+                setUp(M, _input.rest());
+                configured = true;
+            } else if (!configured) {
+                if (_input.read(buffer, 0, buffer.length) >= 0) {
+                    throw new EnigmaException(
+                            "Config beginning does not have *");
                 }
-                setUp(M, settings.substring(0, settings.length() - 1));
-                while (!_input.hasNext("[*]") && _input.hasNextLine()) {
-                    String s = _input.nextLine().replaceAll("\\s+", "")
-                            .toUpperCase();
-                    printMessageLine(M.convert(s));
+                _output.endLine();
+            } else {
+                Metrics.message();
+                int n;
+                while ((n = _input.read(buffer, 0, buffer.length)) >= 0) {
+                    M.convert(buffer, 0, buffer, 0, n);
+                    _output.write(buffer, 0, n);
                 }
+                _output.endLine();
             }
         }
     }
 
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
+     *  file _config, or from its compiled form if caching is on. */
     private Machine readConfig() {
+        long start = Metrics.start();
+        MachineSpec spec;
+        if (_cacheConfig) {
+            spec = CompiledConfig.load(Paths.get(_configName),
+                                       this::parseConfig);
+        } else {
+            spec = parseConfig();
+        }
+        _alphabet = spec.alphabet();
+        Metrics.record(Metrics.Stage.CONFIG, start);
+        return spec.newMachine();
+    }
+
+    /** Return the machine description in configuration file _config. */
+    private MachineSpec parseConfig() {
         try {
             _allrotors = new ArrayList<>();
             if (_config.hasNext("\\S+")) {
-                _alphabet = new UpperCaseAlphabet();
-                _config.next();
+                _alphabet = new Alphabet(_config.next());
                 if (_config.hasNextInt()) {
                     _rotors = _config.nextInt();
                     if (_config.hasNextInt()) {
@@ -139,8 +284,10 @@ public final class Main {
                     throw new EnigmaException(
                             "Number of rotors not passed.");
                 }
+            } else {
+                throw error("configuration file is empty");
             }
-            return new Machine(_alphabet, _rotors, _pawls, _allrotors);
+            return new MachineSpec(_alphabet, _rotors, _pawls, _allrotors);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
@@ -166,13 +313,13 @@ public final class Main {
                 return new MovingRotor(names,
                         new Permutation(cycles, _alphabet), notches);
             } else if (temp.charAt(0) == 'N') {
-                while (_config.hasNext("\\s*[(]\\w+[)]\\s*")) {
+                while (_config.hasNext("\\s*[(].+[)]\\s*")) {
                     cycles += _config.next() + " ";
                 }
                 return new FixedRotor(names,
                         new Permutation(cycles, _alphabet));
             } else if (temp.charAt(0) == 'R') {
-                while (_config.hasNext("\\s*[(]\\w+[)]\\s*")) {
+                while (_config.hasNext("\\s*[(].+[)]\\s*")) {
                     cycles += _config.next() + " ";
                 }
                 return new Reflector(names, new Permutation(cycles, _alphabet));
@@ -184,57 +331,19 @@ public final class Main {
         }
     }
 
-    /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        Scanner read = new Scanner(settings);
-        String[] listOfRotors = new String[M.numRotors()];
-        String plugBoard = "";
-        if (read.hasNext("[*]")) {
-            read.next();
-            for (int i = 0; i < M.numRotors(); i++) {
-                listOfRotors[i] = read.next();
-            }
-            M.insertRotors(listOfRotors);
-            if (read.hasNext("\\w{" + (M.numRotors() - 1) + "}")) {
-                M.setRotors(read.next());
-            }
-            while (read.hasNext("[(]\\w+[)]")) {
-                plugBoard += read.next() + " ";
-            }
-            if (plugBoard.length() > 0) {
-                M.setPlugboard(new Permutation(plugBoard.
-                        substring(0, plugBoard.length() - 1),
-                        _alphabet));
-            }
-        }
-    }
-
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        String messageLine = msg;
-        if (messageLine.length() == 0) {
-            _output.println();
-        } else {
-            while (messageLine.length() > 0) {
-                if (messageLine.length() <= 5) {
-                    _output.println(messageLine);
-                    messageLine = "";
-                } else {
-                    _output.print(messageLine.substring(0, 5) + " ");
-                    messageLine = messageLine.substring
-                            (5, messageLine.length());
-                }
-            }
-        }
+    /** Set M according to the settings line LINE (see Settings). */
+    private void setUp(Machine M, String line) {
+        long start = Metrics.start();
+        Metrics.settings();
+        Settings.parse(M.numRotors(), line).apply(M);
+        Metrics.record(Metrics.Stage.SETUP, start);
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private MessageReader _input;
 
     /** Settings to be used to create new machine. */
     private String _settings;
@@ -242,8 +351,14 @@ public final class Main {
     /** Source of machine configuration. */
     private Scanner _config;
 
-    /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    /** Name of the configuration file. */
+    private String _configName;
+
+    /** True iff the configuration is loaded through CompiledConfig. */
+    private boolean _cacheConfig;
+
+    /** Destination of encoded/decoded messages. */
+    private MessageWriter _output;
 
     /** Rotors. */
     private int _rotors;
@@ -251,6 +366,22 @@ public final class Main {
     /** Pawls. */
     private  int _pawls;
 
+    /** Port on which to serve requests, or 0 to convert files. */
+    private int _port;
+
+    /** True iff output is broken into groups of five characters. */
+    private boolean _grouped;
+
+    /** Number of conversion threads in pipelined mode, or 0 to process
+     *  messages sequentially. */
+    private int _threads;
+
+    /** Number of message characters read and converted at a time. */
+    private static final int MESSAGE_BUFFER = 1 << 16;
+
+    /** Files opened by name, in order of opening. */
+    private final ArrayList<Closeable> _opened = new ArrayList<>();
+
     /** Collection of all rotors. */
     private Collection<Rotor> _allrotors;
 }
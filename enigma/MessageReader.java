@@ -0,0 +1,288 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import static enigma.EnigmaException.*;
+
+/** A single-pass reader of Enigma input (settings lines and message
+ *  lines) working directly on the bytes of a channel.  Files are read
+ *  through memory-mapped windows; other channels through one reusable
+ *  buffer.  Input is decoded as UTF-8.  Message text is returned with
+ *  whitespace removed and letters converted to upper case as it is
+ *  read, so no per-line Strings are made for messages.
+ *  @author Melissa Ly
+ */
+class MessageReader {
+
+    /** A reader of the contents of FILE, which is mapped into memory a
+     *  window at a time. */
+    MessageReader(FileChannel file) {
+        _file = file;
+        _channel = null;
+        try {
+            _fileSize = file.size();
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+        _buffer = ByteBuffer.allocate(0);
+    }
+
+    /** A reader of the bytes of CHANNEL. */
+    MessageReader(ReadableByteChannel channel) {
+        _file = null;
+        _channel = channel;
+        _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        _buffer.limit(0);
+    }
+
+    /** Skip the rest of the current line, if any, and move to the start of
+     *  the next one, skipping its leading whitespace.  Returns false if
+     *  there are no more lines. */
+    boolean nextLine() {
+        if (_inLine) {
+            while (peek() >= 0 && !atEndOfLine()) {
+                take();
+            }
+            endLine();
+        }
+        if (peek() < 0) {
+            return false;
+        }
+        while (peek() >= 0 && !atEndOfLine() && isWhitespace(peek())) {
+            take();
+        }
+        _inLine = true;
+        return true;
+    }
+
+    /** Return true iff the current line is a settings line, that is, its
+     *  first non-whitespace character is '*'. */
+    boolean isSettings() {
+        return _inLine && peek() == '*';
+    }
+
+    /** Return the remainder of the current line, leaving the reader at the
+     *  end of that line. */
+    String rest() {
+        StringBuilder result = new StringBuilder();
+        while (_inLine && peek() >= 0 && !atEndOfLine()) {
+            result.append((char) take());
+        }
+        return result.toString();
+    }
+
+    /** Convert message letters to upper case as they are read iff ON
+     *  (initially true).  Should be off for alphabets in which case is
+     *  significant. */
+    void setUpperCase(boolean on) {
+        _upperCase = on;
+    }
+
+    /** Read up to LEN characters of the message text on the current line
+     *  into BUF starting at OFF, skipping whitespace and, unless turned
+     *  off with setUpperCase, converting letters to upper case.  Returns
+     *  the number of characters read, or -1 if the line has no more
+     *  text. */
+    int read(char[] buf, int off, int len) {
+        int n = 0;
+        while (n < len && _inLine) {
+            int c = peek();
+            if (c < 0 || atEndOfLine()) {
+                break;
+            }
+            take();
+            if (c < ASCII) {
+                if (c == ' ' || (c >= '\t' && c <= '\r')) {
+                    continue;
+                }
+                if (c >= 'a' && c <= 'z' && _upperCase) {
+                    c -= 'a' - 'A';
+                }
+            } else if (_upperCase) {
+                c = Character.toUpperCase(c);
+            }
+            buf[off + n] = (char) c;
+            n += 1;
+        }
+        return n == 0 && len > 0 ? -1 : n;
+    }
+
+    /** Release my input: drop the current mapped window or buffer and
+     *  close my channel. */
+    void close() {
+        _buffer = ByteBuffer.allocate(0);
+        _fileSize = _filePos = 0;
+        try {
+            if (_file != null) {
+                _file.close();
+            } else {
+                _channel.close();
+            }
+        } catch (IOException excp) {
+            throw error("could not close input: %s", excp.getMessage());
+        }
+    }
+
+    /** Return true iff the next character ends a line. */
+    private boolean atEndOfLine() {
+        int c = peek();
+        return c == '\n' || c == '\r';
+    }
+
+    /** Consume the line terminator at the current position, if any. */
+    private void endLine() {
+        if (peek() == '\r') {
+            take();
+            if (peek() == '\n') {
+                take();
+            }
+        } else if (peek() == '\n') {
+            take();
+        }
+        _inLine = false;
+    }
+
+    /** Return true iff C is a whitespace character in the sense of the
+     *  regular expression \s. */
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    /** Return the next character without consuming it, or -1 at the end
+     *  of input. */
+    private int peek() {
+        if (_peeked == NONE) {
+            _peeked = decode();
+        }
+        return _peeked;
+    }
+
+    /** Consume and return the next character, or -1 at the end of
+     *  input. */
+    private int take() {
+        int c = peek();
+        _peeked = NONE;
+        return c;
+    }
+
+    /** Decode and return the next UTF-8 character, or -1 at the end of
+     *  input.  Characters outside the Basic Multilingual Plane are
+     *  returned as two surrogates and malformed sequences as U+FFFD; a
+     *  byte that cuts a sequence short is not consumed with it, so a
+     *  truncated character cannot swallow a line terminator. */
+    private int decode() {
+        if (_lowSurrogate >= 0) {
+            int c = _lowSurrogate;
+            _lowSurrogate = -1;
+            return c;
+        }
+        int b = nextByte();
+        if (b < ASCII) {
+            return b;
+        }
+        int extra, code;
+        if ((b & 0xE0) == 0xC0) {
+            extra = 1;
+            code = b & 0x1F;
+        } else if ((b & 0xF0) == 0xE0) {
+            extra = 2;
+            code = b & 0x0F;
+        } else if ((b & 0xF8) == 0xF0) {
+            extra = 3;
+            code = b & 0x07;
+        } else {
+            return REPLACEMENT;
+        }
+        for (int i = 0; i < extra; i += 1) {
+            b = nextByte();
+            if ((b & 0xC0) != ASCII) {
+                if (b >= 0) {
+                    _buffer.position(_buffer.position() - 1);
+                }
+                return REPLACEMENT;
+            }
+            code = (code << 6) | (b & 0x3F);
+        }
+        if (Character.isSupplementaryCodePoint(code)) {
+            _lowSurrogate = Character.lowSurrogate(code);
+            return Character.highSurrogate(code);
+        }
+        return code;
+    }
+
+    /** Return the next byte of input as an unsigned value, or -1 at the
+     *  end of input. */
+    private int nextByte() {
+        if (!_buffer.hasRemaining() && !refill()) {
+            return -1;
+        }
+        return _buffer.get() & 0xFF;
+    }
+
+    /** Load the next block of input into _buffer.  Returns false at the
+     *  end of input. */
+    private boolean refill() {
+        try {
+            if (_file != null) {
+                long remaining = _fileSize - _filePos;
+                if (remaining <= 0) {
+                    return false;
+                }
+                long len = Math.min(MAP_WINDOW, remaining);
+                _buffer = _file.map(FileChannel.MapMode.READ_ONLY,
+                                    _filePos, len);
+                _filePos += len;
+                return true;
+            }
+            _buffer.clear();
+            int n;
+            do {
+                n = _channel.read(_buffer);
+            } while (n == 0);
+            _buffer.flip();
+            return n > 0;
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Size of the read buffer for channels that are not files. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Size of the mapped windows for files. */
+    static final long MAP_WINDOW = 1L << 26;
+
+    /** Marks an empty _peeked. */
+    private static final int NONE = -2;
+
+    /** Bound on ASCII characters, and the value of the top two bits of a
+     *  UTF-8 continuation byte. */
+    private static final int ASCII = 0x80;
+
+    /** Character returned for malformed input. */
+    private static final int REPLACEMENT = 0xFFFD;
+
+    /** The file being read, or null. */
+    private final FileChannel _file;
+    /** The non-file channel being read, or null. */
+    private final ReadableByteChannel _channel;
+    /** Size of _file. */
+    private long _fileSize;
+    /** Offset in _file of the first byte not yet mapped. */
+    private long _filePos;
+    /** The current block of input. */
+    private ByteBuffer _buffer;
+    /** The character after the current position, if already decoded;
+     *  otherwise NONE. */
+    private int _peeked = NONE;
+    /** Second half of a surrogate pair still to be returned, or -1. */
+    private int _lowSurrogate = -1;
+    /** True iff nextLine has started a line that has not yet ended. */
+    private boolean _inLine;
+    /** True iff message letters are converted to upper case. */
+    private boolean _upperCase = true;
+}
@@ -0,0 +1,147 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/** The suite of all JUnit tests for the MessageReader class.
+ *  @author Melissa Ly
+ */
+public class MessageReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A channel that delivers BYTES at most CHUNK bytes per read, so
+     *  that a reader's buffer ends every CHUNK bytes. */
+    private static ReadableByteChannel trickle(byte[] bytes, int chunk) {
+        return new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dest) {
+                if (_pos == bytes.length) {
+                    return -1;
+                }
+                int n = Math.min(Math.min(chunk, dest.remaining()),
+                                 bytes.length - _pos);
+                dest.put(bytes, _pos, n);
+                _pos += n;
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+
+            /** Offset of the next byte to deliver. */
+            private int _pos;
+        };
+    }
+
+    /** Return the message text of the current line of IN, read a few
+     *  characters at a time. */
+    private static String text(MessageReader in) {
+        StringBuilder result = new StringBuilder();
+        char[] buf = new char[3];
+        int n;
+        while ((n = in.read(buf, 0, buf.length)) >= 0) {
+            result.append(buf, 0, n);
+        }
+        return result.toString();
+    }
+
+    /** Return the message text of each line of IN, with settings lines
+     *  given whole, as returned by rest. */
+    private static String lines(MessageReader in) {
+        StringBuilder result = new StringBuilder();
+        while (in.nextLine()) {
+            result.append(in.isSettings() ? in.rest() : text(in))
+                .append('|');
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testMultibyteSplitAcrossBuffers() {
+        String input = "* B I\n\u00e9t\u00e9 \u20ac\ud834\udd1e x\n";
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        for (int chunk = 1; chunk <= 4; chunk += 1) {
+            MessageReader in = new MessageReader(trickle(bytes, chunk));
+            in.setUpperCase(false);
+            assertEquals("chunk " + chunk,
+                         "* B I|\u00e9t\u00e9\u20ac\ud834\udd1ex|",
+                         lines(in));
+        }
+
+        byte[] large = new byte[MessageReader.BUFFER_SIZE + 2];
+        Arrays.fill(large, (byte) 'A');
+        byte[] euro = "\u20ac".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(euro, 0, large, MessageReader.BUFFER_SIZE - 1,
+                         euro.length);
+        MessageReader in = new MessageReader(
+                Channels.newChannel(new ByteArrayInputStream(large)));
+        assertTrue(in.nextLine());
+        String text = text(in);
+        assertEquals(MessageReader.BUFFER_SIZE, text.length());
+        assertEquals('\u20ac', text.charAt(MessageReader.BUFFER_SIZE - 1));
+        assertFalse(in.nextLine());
+    }
+
+    @Test
+    public void testMalformed() {
+        byte[] bytes = {'A', (byte) 0xC3, '\n', 'B', (byte) 0xFF, 'C',
+                        (byte) 0xE2, (byte) 0x82};
+        MessageReader in = new MessageReader(trickle(bytes, 2));
+        assertEquals("A\ufffd|B\ufffdC\ufffd|", lines(in));
+    }
+
+    @Test
+    public void testLineEnds() {
+        byte[] bytes = "* X Y\r\nA B\r\n\r\nCD\rEF\n\n  * Z\r"
+            .getBytes(StandardCharsets.US_ASCII);
+        MessageReader in = new MessageReader(trickle(bytes, 1));
+        assertEquals("* X Y|AB||CD|EF||* Z|", lines(in));
+    }
+
+    @Test
+    public void testUpperCase() {
+        byte[] bytes = "ab c\u00e9\n".getBytes(StandardCharsets.UTF_8);
+        MessageReader upper = new MessageReader(trickle(bytes, 64));
+        assertEquals("ABC\u00c9|", lines(upper));
+        MessageReader exact = new MessageReader(trickle(bytes, 64));
+        exact.setUpperCase(false);
+        assertEquals("abc\u00e9|", lines(exact));
+    }
+
+    @Test
+    public void testFile() throws IOException {
+        Path file = Files.createTempFile("enigma", ".in");
+        try {
+            Files.write(file, "* B\nh\u00e9llo\r\n"
+                        .getBytes(StandardCharsets.UTF_8));
+            try (FileChannel channel = FileChannel.open(file)) {
+                assertEquals("* B|H\u00c9LLO|",
+                             lines(new MessageReader(channel)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** The output stage for converted messages.  Characters are encoded as
+ *  UTF-8 straight into one large reusable buffer, broken into groups of
+ *  five separated by blanks (unless grouping is turned off), and the
+ *  buffer is written to a channel only when full or when flushed.
+ *  @author Melissa Ly
+ */
+class MessageWriter {
+
+    /** A writer to CHANNEL that separates groups of five characters
+     *  with blanks iff GROUPED. */
+    MessageWriter(WritableByteChannel channel, boolean grouped) {
+        _channel = channel;
+        _grouped = grouped;
+        _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /** Append the LEN characters of BUF starting at OFF to the current
+     *  output line. */
+    void write(char[] buf, int off, int len) {
+        long start = Metrics.start();
+        for (int i = off; i < off + len; i += 1) {
+            if (_buffer.remaining() < MAX_BYTES_PER_CHAR) {
+                drain();
+            }
+            char c = buf[i];
+            if (_highSurrogate != 0 && Character.isLowSurrogate(c)) {
+                put(c);
+                continue;
+            }
+            if (_grouped && _column > 0 && _column % GROUP == 0) {
+                _buffer.put((byte) ' ');
+            }
+            put(c);
+            _column += 1;
+        }
+        Metrics.record(Metrics.Stage.OUTPUT, start);
+    }
+
+    /** Write LINE as an output line of its own, without breaking it into
+     *  groups. */
+    void writeLine(String line) {
+        for (int i = 0; i < line.length(); i += 1) {
+            if (_buffer.remaining() < MAX_BYTES_PER_CHAR) {
+                drain();
+            }
+            put(line.charAt(i));
+        }
+        endLine();
+    }
+
+    /** End the current output line. */
+    void endLine() {
+        if (_buffer.remaining() < NEWLINE.length) {
+            drain();
+        }
+        _buffer.put(NEWLINE);
+        _column = 0;
+    }
+
+    /** Write out everything buffered so far. */
+    void flush() {
+        drain();
+    }
+
+    /** Write out everything buffered so far and close my channel. */
+    void close() {
+        drain();
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("could not close output: %s", excp.getMessage());
+        }
+    }
+
+    /** Encode C into _buffer, which has room for it. */
+    private void put(char c) {
+        if (c < 0x80) {
+            _buffer.put((byte) c);
+        } else if (c < 0x800) {
+            _buffer.put((byte) (0xC0 | (c >> 6)));
+            _buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c)) {
+            _highSurrogate = c;
+        } else if (Character.isLowSurrogate(c) && _highSurrogate != 0) {
+            int code = Character.toCodePoint(_highSurrogate, c);
+            _highSurrogate = 0;
+            _buffer.put((byte) (0xF0 | (code >> 18)));
+            _buffer.put((byte) (0x80 | ((code >> 12) & 0x3F)));
+            _buffer.put((byte) (0x80 | ((code >> 6) & 0x3F)));
+            _buffer.put((byte) (0x80 | (code & 0x3F)));
+        } else {
+            _buffer.put((byte) (0xE0 | (c >> 12)));
+            _buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            _buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+
+    /** Write the contents of _buffer to my channel and empty it. */
+    private void drain() {
+        _buffer.flip();
+        try {
+            while (_buffer.hasRemaining()) {
+                _channel.write(_buffer);
+            }
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+        _buffer.clear();
+    }
+
+    /** Size of the output buffer. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Number of characters in a group. */
+    static final int GROUP = 5;
+
+    /** Room needed in _buffer for one character and a preceding blank. */
+    private static final int MAX_BYTES_PER_CHAR = 5;
+
+    /** The bytes that end a line. */
+    private static final byte[] NEWLINE =
+        System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    /** Destination of my output. */
+    private final WritableByteChannel _channel;
+    /** True iff I separate groups of five characters. */
+    private final boolean _grouped;
+    /** Bytes not yet written to _channel. */
+    private final ByteBuffer _buffer;
+    /** Number of characters written on the current line. */
+    private int _column;
+    /** First half of a surrogate pair awaiting its second half, or 0. */
+    private char _highSurrogate;
+}
@@ -0,0 +1,99 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+/** The suite of all JUnit tests for the MessageWriter class.
+ *  @author Melissa Ly
+ */
+public class MessageWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Line separator written by MessageWriter. */
+    private static final String NL = System.lineSeparator();
+
+    /** Receives the bytes written by the writer under test. */
+    private final ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+
+    /** Return a writer to _bytes, grouping its output iff GROUPED. */
+    private MessageWriter writer(boolean grouped) {
+        return new MessageWriter(Channels.newChannel(_bytes), grouped);
+    }
+
+    /** Write each of PIECES to OUT in a separate call. */
+    private static void write(MessageWriter out, String... pieces) {
+        for (String piece : pieces) {
+            out.write(piece.toCharArray(), 0, piece.length());
+        }
+    }
+
+    /** Return everything written to _bytes, decoded as UTF-8. */
+    private String output() {
+        return new String(_bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testGroupsAcrossWrites() {
+        MessageWriter out = writer(true);
+        write(out, "ABC", "DEFGH", "", "IJKLMNO", "P");
+        out.endLine();
+        write(out, "QRSTU", "V");
+        out.endLine();
+        out.writeLine("ERROR BAD INPUT");
+        out.endLine();
+        out.flush();
+        assertEquals("ABCDE FGHIJ KLMNO P" + NL + "QRSTU V" + NL
+                     + "ERROR BAD INPUT" + NL + NL, output());
+    }
+
+    @Test
+    public void testUngrouped() {
+        MessageWriter out = writer(false);
+        char[] text = "XXABCDEFGHIJKLXX".toCharArray();
+        out.write(text, 2, 7);
+        out.write(text, 9, 5);
+        out.endLine();
+        out.flush();
+        assertEquals("ABCDEFGHIJKL" + NL, output());
+    }
+
+    @Test
+    public void testNonAscii() {
+        MessageWriter out = writer(true);
+        write(out, "\u00e9ABCD\u20ac", "\ud834", "\udd1eZ\u0416\u00ff", "Q");
+        out.endLine();
+        out.flush();
+        String expected = "\u00e9ABCD \u20ac\ud834\udd1eZ\u0416\u00ff Q" + NL;
+        assertEquals(expected, output());
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8),
+                          _bytes.toByteArray());
+    }
+
+    @Test
+    public void testLongOutput() {
+        MessageWriter out = writer(true);
+        StringBuilder text = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 3 * MessageWriter.BUFFER_SIZE; i += 1) {
+            char c = i % 7 == 0 ? '\u20ac' : (char) ('A' + i % 26);
+            if (i > 0 && i % MessageWriter.GROUP == 0) {
+                expected.append(' ');
+            }
+            text.append(c);
+            expected.append(c);
+        }
+        write(out, text.toString());
+        out.endLine();
+        out.flush();
+        assertEquals(expected + NL, output());
+    }
+}
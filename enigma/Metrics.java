@@ -0,0 +1,288 @@
+package enigma;
+
+import java.io.PrintStream;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Process-wide performance counters for the enigma package.  While
+ *  enabled, it counts characters converted, message lines and settings
+ *  blocks in striped counters (LongAdders, so that concurrent pipeline
+ *  threads do not contend), records how often rotors other than the
+ *  rightmost moved by ordinary carry and by double stepping, and keeps a
+ *  latency histogram for each stage of processing.  While disabled, each
+ *  hook costs a test of one static flag, and the hooks sit at coarse
+ *  points (one per call of a bulk conversion, settings line, message line
+ *  or non-trivial rotor step), never in the per-character loop.
+ *  @author Melissa Ly
+ */
+class Metrics {
+
+    /** Not instantiable. */
+    private Metrics() {
+    }
+
+    /** The timed stages of processing. */
+    enum Stage {
+        /** Reading and parsing the configuration. */
+        CONFIG,
+        /** Applying a settings line: inserting rotors, setting them and
+         *  setting the plugboard. */
+        SETUP,
+        /** Converting a block of message characters. */
+        CONVERT,
+        /** Formatting and writing a block of converted characters. */
+        OUTPUT
+    }
+
+    /** Return true iff metrics are being collected. */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /** Start collecting metrics iff ON. */
+    static void enable(boolean on) {
+        _enabled = on;
+    }
+
+    /** Discard everything collected so far. */
+    static void reset() {
+        _chars.reset();
+        _messages.reset();
+        _settings.reset();
+        _carrySteps.reset();
+        _doubleSteps.reset();
+        for (Histogram h : HISTOGRAMS) {
+            h.reset();
+        }
+    }
+
+    /** Return a start time for a stage, to be passed to record, or 0 if
+     *  metrics are disabled. */
+    static long start() {
+        return _enabled ? System.nanoTime() : 0;
+    }
+
+    /** Record the time since START, as returned by start, as one
+     *  occurrence of STAGE.  Nothing is recorded if START is 0, that is,
+     *  if metrics were enabled only after the stage began. */
+    static void record(Stage stage, long start) {
+        if (_enabled && start != 0) {
+            HISTOGRAMS[stage.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    /** Count N characters converted. */
+    static void converted(long n) {
+        if (_enabled) {
+            _chars.add(n);
+        }
+    }
+
+    /** Count one message line. */
+    static void message() {
+        if (_enabled) {
+            _messages.increment();
+        }
+    }
+
+    /** Count one settings block. */
+    static void settings() {
+        if (_enabled) {
+            _settings.increment();
+        }
+    }
+
+    /** Count one rotor step in which CARRIES rotors moved because the
+     *  rotor to their right was at a notch and DOUBLES moved because they
+     *  were themselves at a notch (double stepping). */
+    static void rotorStep(int carries, int doubles) {
+        if (_enabled) {
+            _carrySteps.add(carries);
+            _doubleSteps.add(doubles);
+        }
+    }
+
+    /** Return the number of characters converted. */
+    static long chars() {
+        return _chars.sum();
+    }
+
+    /** Return the number of message lines. */
+    static long messages() {
+        return _messages.sum();
+    }
+
+    /** Return the number of settings blocks. */
+    static long settingsBlocks() {
+        return _settings.sum();
+    }
+
+    /** Return the number of rotor moves caused by carries. */
+    static long carrySteps() {
+        return _carrySteps.sum();
+    }
+
+    /** Return the number of rotor moves caused by double stepping. */
+    static long doubleSteps() {
+        return _doubleSteps.sum();
+    }
+
+    /** Return the histogram for STAGE. */
+    static Histogram histogram(Stage stage) {
+        return HISTOGRAMS[stage.ordinal()];
+    }
+
+    /** Print everything collected so far on OUT. */
+    static void dump(PrintStream out) {
+        out.printf("enigma metrics%n");
+        out.printf("  characters converted %14d%n", chars());
+        out.printf("  message lines        %14d%n", messages());
+        out.printf("  settings blocks      %14d%n", settingsBlocks());
+        out.printf("  carry steps          %14d%n", carrySteps());
+        out.printf("  double steps         %14d%n", doubleSteps());
+        out.printf("  %-8s %10s %10s %10s %10s %10s %10s  (us)%n", "stage",
+                   "count", "mean", "p50", "p99", "p99.9", "max");
+        for (Stage stage : Stage.values()) {
+            Histogram h = histogram(stage);
+            out.printf("  %-8s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                       stage.name().toLowerCase(), h.count(),
+                       h.mean() / MICRO, h.percentile(50) / MICRO,
+                       h.percentile(99) / MICRO,
+                       h.percentile(99.9) / MICRO, h.max() / MICRO);
+        }
+        out.flush();
+    }
+
+    /** Arrange for dump(OUT) to be called when the program exits,
+     *  including when it is terminated by SIGINT or SIGTERM. */
+    static void dumpAtExit(PrintStream out) {
+        Runtime.getRuntime().addShutdownHook(
+                new Thread(() -> dump(out), "enigma-metrics"));
+    }
+
+    /** A concurrent histogram of non-negative values with bounded
+     *  relative error, in the manner of HdrHistogram: values below
+     *  2**SUB_BITS have their own buckets, and each larger power-of-two
+     *  range is split into 2**SUB_BITS equal buckets, so a value's bucket
+     *  bounds it to within about 3%. */
+    static class Histogram {
+
+        /** Record one occurrence of VALUE (negative values count as 0). */
+        void record(long value) {
+            value = Math.max(0, value);
+            _counts.incrementAndGet(bucket(value));
+            _sum.add(value);
+            long max = _max.get();
+            while (value > max && !_max.compareAndSet(max, value)) {
+                max = _max.get();
+            }
+        }
+
+        /** Return the number of values recorded. */
+        long count() {
+            long total = 0;
+            for (int i = 0; i < _counts.length(); i += 1) {
+                total += _counts.get(i);
+            }
+            return total;
+        }
+
+        /** Return the mean of the values recorded, or 0 if none. */
+        double mean() {
+            long n = count();
+            return n == 0 ? 0 : (double) _sum.sum() / n;
+        }
+
+        /** Return the largest value recorded, or 0 if none. */
+        long max() {
+            return _max.get();
+        }
+
+        /** Return an approximation (the lower bound of its bucket) of the
+         *  value below which PERCENT percent of the values recorded lie,
+         *  or 0 if none. */
+        long percentile(double percent) {
+            long n = count();
+            long rank = (long) Math.ceil(percent / 100 * n);
+            long seen = 0;
+            for (int i = 0; i < _counts.length(); i += 1) {
+                seen += _counts.get(i);
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(lowerBound(i), max());
+                }
+            }
+            return 0;
+        }
+
+        /** Discard all values recorded. */
+        void reset() {
+            for (int i = 0; i < _counts.length(); i += 1) {
+                _counts.set(i, 0);
+            }
+            _sum.reset();
+            _max.set(0);
+        }
+
+        /** Return the bucket holding VALUE >= 0. */
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exp = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return ((exp - SUB_BITS + 1) << SUB_BITS) | sub;
+        }
+
+        /** Return the smallest value in BUCKET. */
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exp = (bucket >> SUB_BITS) + SUB_BITS - 1;
+            long sub = bucket & (SUB_BUCKETS - 1);
+            return (SUB_BUCKETS + sub) << (exp - SUB_BITS);
+        }
+
+        /** Number of bits of precision kept below the leading bit. */
+        static final int SUB_BITS = 5;
+
+        /** Number of buckets per power of two. */
+        static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+        /** Count of values in each bucket. */
+        private final AtomicLongArray _counts =
+            new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+        /** Sum of the values recorded. */
+        private final LongAdder _sum = new LongAdder();
+        /** Largest value recorded. */
+        private final AtomicLong _max = new AtomicLong();
+    }
+
+    /** Nanoseconds per microsecond. */
+    private static final double MICRO = 1000.0;
+
+    /** Histograms for each stage, indexed by ordinal. */
+    private static final Histogram[] HISTOGRAMS =
+        new Histogram[Stage.values().length];
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i += 1) {
+            HISTOGRAMS[i] = new Histogram();
+        }
+    }
+
+    /** True iff metrics are being collected. */
+    private static volatile boolean _enabled;
+    /** Characters converted. */
+    private static final LongAdder _chars = new LongAdder();
+    /** Message lines read. */
+    private static final LongAdder _messages = new LongAdder();
+    /** Settings blocks read. */
+    private static final LongAdder _settings = new LongAdder();
+    /** Rotor moves due to carries. */
+    private static final LongAdder _carrySteps = new LongAdder();
+    /** Rotor moves due to double stepping. */
+    private static final LongAdder _doubleSteps = new LongAdder();
+}
@@ -0,0 +1,69 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Melissa Ly
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void testMetrics() {
+        Metrics.reset();
+        Metrics.enable(true);
+        try {
+            Machine machine = navalMachine("AAIQ", "");
+            machine.convert("ABCDE");
+            assertEquals(5, Metrics.chars());
+            assertEquals(1, Metrics.histogram(Metrics.Stage.CONVERT).count());
+            assertEquals(2, Metrics.carrySteps());
+            assertEquals(1, Metrics.doubleSteps());
+        } finally {
+            Metrics.enable(false);
+            Metrics.reset();
+        }
+        navalMachine("AAIQ", "").convert("ABCDE");
+        assertEquals(0, Metrics.chars());
+    }
+
+    @Test
+    public void testEnabledDuringStage() {
+        Metrics.reset();
+        long start = Metrics.start();
+        Metrics.enable(true);
+        try {
+            Metrics.record(Metrics.Stage.CONVERT, start);
+            assertEquals(0, Metrics.histogram(Metrics.Stage.CONVERT).count());
+        } finally {
+            Metrics.enable(false);
+            Metrics.reset();
+        }
+    }
+
+    @Test
+    public void testHistogram() {
+        Metrics.Histogram h = new Metrics.Histogram();
+        for (int v = 1; v <= 100000; v += 1) {
+            h.record(v);
+        }
+        assertEquals(100000, h.count());
+        assertEquals(100000, h.max());
+        assertEquals(50000.5, h.mean(), 1e-6);
+        assertEquals(50000, h.percentile(50), 50000 * 0.04);
+        assertEquals(99000, h.percentile(99), 99000 * 0.04);
+        for (long v : new long[] {0, 31, 32, 33, 1000, 1L << 40}) {
+            int b = Metrics.Histogram.bucket(v);
+            assertTrue(Metrics.Histogram.lowerBound(b) <= v);
+            assertTrue(v < Metrics.Histogram.lowerBound(b + 1));
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.BitSet;
+
 import static enigma.EnigmaException.*;
 
 /** Class that represents a rotating rotor in the enigma machine.
@@ -14,7 +16,29 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        notchesList = notches;
+        if (perm.size() > Long.SIZE) {
+            _notchSet = new BitSet(perm.size());
+        }
+        for (int i = 0; i < notches.length(); i += 1) {
+            int posn = perm.alphabet().toInt(notches.charAt(i));
+            if (_notchSet == null) {
+                _notchBits |= 1L << posn;
+            } else {
+                _notchSet.set(posn);
+            }
+        }
+    }
+
+    /** UNRINGED at ring setting RING, whose permutation is PERM. */
+    private MovingRotor(MovingRotor unringed, Permutation perm, int ring) {
+        super(unringed, perm, ring);
+        _notchBits = unringed._notchBits;
+        _notchSet = unringed._notchSet;
+    }
+
+    @Override
+    Rotor ringed(Permutation perm, int ring) {
+        return new MovingRotor(this, perm, ring);
     }
 
     @Override
@@ -24,8 +48,35 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        return notchesList.indexOf
-                (permutation().alphabet().toChar(setting())) != -1;
+        return atNotch(setting());
+    }
+
+    @Override
+    boolean atNotch(int posn) {
+        if (_notchSet == null) {
+            return ((_notchBits >>> posn) & 1) != 0;
+        }
+        return _notchSet.get(posn);
+    }
+
+    @Override
+    int positionsToNotch(int posn) {
+        if (_notchSet == null) {
+            if (_notchBits == 0) {
+                return -1;
+            }
+            long ahead = _notchBits >>> posn;
+            if (ahead != 0) {
+                return Long.numberOfTrailingZeros(ahead);
+            }
+            return size() - posn + Long.numberOfTrailingZeros(_notchBits);
+        }
+        int next = _notchSet.nextSetBit(posn);
+        if (next >= 0) {
+            return next - posn;
+        }
+        next = _notchSet.nextSetBit(0);
+        return next < 0 ? -1 : size() - posn + next;
     }
 
     @Override
@@ -33,7 +84,12 @@ class MovingRotor extends Rotor {
         set(permutation().wrap(setting() + 1));
     }
 
-    /** An array list containing notches. */
-    private String notchesList;
+    /** Bit k is set iff position k is a notch.  Used when my alphabet
+     *  has at most 64 characters. */
+    private long _notchBits;
+
+    /** The notch positions, used instead of _notchBits when my alphabet
+     *  has more than 64 characters; otherwise null. */
+    private BitSet _notchSet;
 
 }
@@ -71,4 +71,93 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkNotches() {
+        setRotor("VI", NAVALA, "ZM");
+        assertTrue(rotor.atNotch(25));
+        assertTrue(rotor.atNotch(12));
+        assertFalse(rotor.atNotch(0));
+        assertEquals(0, rotor.positionsToNotch(12));
+        assertEquals(12, rotor.positionsToNotch(0));
+        assertEquals(1, rotor.positionsToNotch(24));
+        assertEquals(12, rotor.positionsToNotch(13));
+        rotor.set(25);
+        assertTrue(rotor.atNotch());
+        setRotor("I", NAVALA, "");
+        assertEquals(-1, rotor.positionsToNotch(3));
+    }
+
+    @Test
+    public void checkNotchesLargeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = '!'; c < '!' + 90; c += 1) {
+            if (c != '(' && c != ')' && c != '*') {
+                chars.append(c);
+            }
+        }
+        Alphabet big = new Alphabet(chars.toString());
+        rotor = new MovingRotor("BIG", new Permutation("", big), "#y");
+        int first = big.toInt('#'), last = big.toInt('y');
+        assertTrue(big.size() > Long.SIZE);
+        assertTrue(rotor.atNotch(first));
+        assertTrue(rotor.atNotch(last));
+        assertFalse(rotor.atNotch(last - 1));
+        assertEquals(2, rotor.positionsToNotch(last - 2));
+        assertEquals(big.size() - last - 1 + first,
+                     rotor.positionsToNotch(last + 1));
+    }
+
+    @Test
+    public void checkRing() {
+        setRotor("VI", NAVALA, "ZM");
+        Rotor ringed = rotor.withRing(1);
+        assertSame(ringed, rotor.withRing(1));
+        assertSame(rotor, ringed.withRing(0));
+        assertSame(ringed, ringed.withRing(1));
+        assertEquals(1, ringed.ring());
+        assertTrue(ringed.rotates());
+        assertTrue(ringed.atNotch(25));
+        assertTrue(ringed.atNotch(12));
+        assertFalse(ringed.atNotch(0));
+        for (int posn = 0; posn < 26; posn += 1) {
+            for (int c = 0; c < 26; c += 1) {
+                assertEquals(rotor.convertForward(c, (posn + 25) % 26),
+                             ringed.convertForward(c, posn));
+                assertEquals(rotor.convertBackward(c, (posn + 25) % 26),
+                             ringed.convertBackward(c, posn));
+            }
+        }
+    }
+
+    @Test
+    public void testRingsAcrossThreads() throws InterruptedException {
+        Rotor beta = new FixedRotor("Beta",
+                new Permutation(NAVALA.get("Beta"), UPPER));
+        Rotor ringed = beta.withRing(3);
+        Rotor[][] found = new Rotor[4][26];
+        Thread[] threads = new Thread[found.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            Rotor[] mine = found[t];
+            Rotor from = t % 2 == 0 ? beta : ringed;
+            threads[t] = new Thread(() -> {
+                for (int r = 25; r >= 0; r -= 1) {
+                    mine[r] = from.withRing(r);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int r = 0; r < 26; r += 1) {
+            Rotor expected = beta.withRing(r);
+            assertEquals(r, expected.ring());
+            assertTrue(expected instanceof FixedRotor);
+            assertEquals("Beta", expected.name());
+            for (Rotor[] mine : found) {
+                assertSame(expected, mine[r]);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,379 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Log-probabilities of the n-grams of an alphabet, for scoring candidate
+ *  plaintexts, together with simple letter statistics.  Texts are given
+ *  as arrays of alphabet indices, as produced by Machine.convert(int), so
+ *  nothing is converted to characters.  The table is a flat array of
+ *  size^n floats: the entry for the n-gram c_1 ... c_n is at index
+ *  c_1 * size^(n-1) + ... + c_n, and holds log10 of its frequency in some
+ *  corpus, with unseen n-grams given a floor value below that of any
+ *  seen one.
+ *
+ *  A table may be saved to a file and loaded back through a read-only
+ *  memory mapping, which the operating system shares among all the
+ *  processes that load the same file.  Layout (big-endian):
+ *  <pre>
+ *    int magic, int version, int n, int alphabet size,
+ *    char[size] alphabet, float[size^n] log-probabilities
+ *  </pre>
+ *  @author Melissa Ly
+ */
+class NGramTable {
+
+    /** A table of N-grams of ALPHA whose log-probabilities are LOGPROBS,
+     *  indexed as described above. */
+    NGramTable(Alphabet alpha, int n, FloatBuffer logProbs) {
+        _alphabet = alpha;
+        _order = n;
+        _span = span(alpha.size(), n);
+        if (logProbs.capacity() != _span) {
+            throw error("n-gram table has the wrong size");
+        }
+        _logProbs = logProbs;
+    }
+
+    /** Return the table of the N-grams of ALPHA in CORPUS.  Characters
+     *  of CORPUS that are not in ALPHA (after conversion to upper case,
+     *  if only that is in ALPHA) are skipped. */
+    static NGramTable build(Alphabet alpha, int n, CharSequence corpus) {
+        int size = alpha.size(), span = span(size, n);
+        int[] counts = new int[span];
+        long total = 0;
+        int gram = 0, seen = 0, low = span / size;
+        for (int i = 0; i < corpus.length(); i += 1) {
+            char c = corpus.charAt(i);
+            if (!alpha.contains(c)) {
+                c = Character.toUpperCase(c);
+                if (!alpha.contains(c)) {
+                    continue;
+                }
+            }
+            gram = (gram % low) * size + alpha.toInt(c);
+            seen += 1;
+            if (seen >= n) {
+                counts[gram] += 1;
+                total += 1;
+            }
+        }
+        return fromCounts(alpha, n, counts, total);
+    }
+
+    /** Return the table of N-grams of ALPHA read from IN, which holds
+     *  lines consisting of an n-gram and its count, such as
+     *  "TION 13168375".  N-grams not listed are unseen. */
+    static NGramTable parse(Alphabet alpha, int n, BufferedReader in)
+        throws IOException {
+        int size = alpha.size();
+        int[] counts = new int[span(size, n)];
+        long total = 0;
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length == 1 && fields[0].isEmpty()) {
+                continue;
+            }
+            if (fields.length != 2 || fields[0].length() != n) {
+                throw error("bad n-gram count line: %s", line);
+            }
+            int gram = 0;
+            for (int k = 0; k < n; k += 1) {
+                gram = gram * size + alpha.toInt(fields[0].charAt(k));
+            }
+            try {
+                int count = Integer.parseInt(fields[1]);
+                counts[gram] += count;
+                total += count;
+            } catch (NumberFormatException excp) {
+                throw error("bad n-gram count line: %s", line);
+            }
+        }
+        return fromCounts(alpha, n, counts, total);
+    }
+
+    /** Return the table of N-grams of ALPHA whose counts are COUNTS,
+     *  totalling TOTAL. */
+    private static NGramTable fromCounts(Alphabet alpha, int n, int[] counts,
+                                         long total) {
+        if (total == 0) {
+            throw error("no n-grams to count");
+        }
+        float[] logProbs = new float[counts.length];
+        float floor = (float) Math.log10(FLOOR / total);
+        for (int g = 0; g < counts.length; g += 1) {
+            logProbs[g] = counts[g] == 0 ? floor
+                : (float) Math.log10((double) counts[g] / total);
+        }
+        return new NGramTable(alpha, n, FloatBuffer.wrap(logProbs));
+    }
+
+    /** Return the table saved in the file FILE, which is memory-mapped
+     *  rather than read. */
+    static NGramTable load(Path file) {
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer in =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw error("%s is not an n-gram table", file);
+            }
+            int n = in.getInt(), size = in.getInt();
+            if (n <= 0 || size <= 0
+                || in.remaining() / Character.BYTES < size) {
+                throw error("%s is not an n-gram table", file);
+            }
+            char[] chars = new char[size];
+            in.asCharBuffer().get(chars);
+            in.position(in.position() + chars.length * Character.BYTES);
+            Alphabet alpha = new Alphabet(new String(chars));
+            return new NGramTable(alpha, n, in.slice().asFloatBuffer());
+        } catch (IOException | BufferUnderflowException excp) {
+            throw error("could not read n-gram table %s", file);
+        }
+    }
+
+    /** Save me to the file FILE, replacing it atomically. */
+    void write(Path file) {
+        int size = _alphabet.size();
+        ByteBuffer out = ByteBuffer.allocate(4 * Integer.BYTES
+                                             + size * Character.BYTES
+                                             + _span * Float.BYTES);
+        out.putInt(MAGIC).putInt(VERSION).putInt(_order).putInt(size);
+        for (int i = 0; i < size; i += 1) {
+            out.putChar(_alphabet.toChar(i));
+        }
+        for (int g = 0; g < _span; g += 1) {
+            out.putFloat(_logProbs.get(g));
+        }
+        out.flip();
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(file.toAbsolutePath().getParent(),
+                                        "enigma", ".tmp");
+            try (FileChannel channel = FileChannel.open(temp,
+                     StandardOpenOption.WRITE)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException excp) {
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException ignored) {
+                /* Reported below. */
+            }
+            throw error("could not write n-gram table %s", file);
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return n, the length of my n-grams. */
+    int order() {
+        return _order;
+    }
+
+    /** Return the log-probability of the n-gram numbered GRAM. */
+    float logProb(int gram) {
+        return _logProbs.get(gram);
+    }
+
+    /** Return the sum of the log-probabilities of the n-grams of
+     *  TEXT[FROM .. TO-1], a sequence of alphabet indices. */
+    double score(int[] text, int from, int to) {
+        int size = _alphabet.size(), low = _span / size;
+        int gram = 0;
+        double sum = 0;
+        for (int i = from; i < to; i += 1) {
+            gram = (gram % low) * size + text[i];
+            if (i - from >= _order - 1) {
+                sum += _logProbs.get(gram);
+            }
+        }
+        return sum;
+    }
+
+    /** Return the sum of the log-probabilities of the n-grams of TEXT. */
+    double score(int[] text) {
+        return score(text, 0, text.length);
+    }
+
+    /** Return a new, empty window of LENGTH characters scored by me. */
+    Window window(int length) {
+        return new Window(length);
+    }
+
+    /** The last few characters of a stream of alphabet indices, with
+     *  their n-gram score and letter counts kept up to date as each
+     *  character is added, so that scoring every window of a long text
+     *  costs a constant amount per character. */
+    class Window {
+        /** An empty window holding at most LENGTH characters. */
+        Window(int length) {
+            if (length < _order) {
+                throw error("window shorter than the n-grams");
+            }
+            _chars = new int[length];
+            _scores = new float[length];
+            _low = _span / _alphabet.size();
+            _counts = new int[_alphabet.size()];
+        }
+
+        /** Add the character C (an alphabet index) at the end of me,
+         *  dropping my first character if I am full. */
+        void push(int c) {
+            int length = _chars.length;
+            if (_count == length) {
+                _sum -= _scores[(_start + _order - 1) % length];
+                int old = _chars[_start];
+                _counts[old] -= 1;
+                _pairs -= 2L * _counts[old];
+                _start = _start + 1 == length ? 0 : _start + 1;
+                _count -= 1;
+            }
+            int slot = (_start + _count) % length;
+            _chars[slot] = c;
+            _pairs += 2L * _counts[c];
+            _counts[c] += 1;
+            _gram = (_gram % _low) * _alphabet.size() + c;
+            _count += 1;
+            _scores[slot] = _count >= _order ? _logProbs.get(_gram) : 0;
+            _sum += _scores[slot];
+        }
+
+        /** Return the sum of the log-probabilities of my n-grams. */
+        double score() {
+            return _sum;
+        }
+
+        /** Return the number of characters I hold. */
+        int size() {
+            return _count;
+        }
+
+        /** Return the index of coincidence of my characters. */
+        double indexOfCoincidence() {
+            return _count < 2 ? 0
+                : (double) _pairs / ((long) _count * (_count - 1));
+        }
+
+        /** Remove all my characters. */
+        void clear() {
+            _start = _count = _gram = 0;
+            _sum = 0;
+            _pairs = 0;
+            Arrays.fill(_counts, 0);
+        }
+
+        /** My characters, in a circular buffer starting at _start. */
+        private final int[] _chars;
+        /** _scores[k] is the log-probability of the n-gram ending with
+         *  _chars[k], or 0 if that n-gram does not lie in me. */
+        private final float[] _scores;
+        /** _counts[c] is the number of times c occurs in me. */
+        private final int[] _counts;
+        /** Position of my first character in _chars. */
+        private int _start;
+        /** Number of characters I hold. */
+        private int _count;
+        /** Number of (n-1)-grams, by which _gram is reduced before
+         *  another character is appended. */
+        private final int _low;
+        /** Number of the n-gram ending with my last character. */
+        private int _gram;
+        /** Sum of the log-probabilities of my n-grams. */
+        private double _sum;
+        /** Sum of _counts[c] * (_counts[c] - 1) over all c. */
+        private long _pairs;
+    }
+
+    /** Return the number of occurrences of each of the SIZE letters in
+     *  TEXT[FROM .. TO-1]. */
+    static int[] unigrams(int[] text, int from, int to, int size) {
+        int[] counts = new int[size];
+        for (int i = from; i < to; i += 1) {
+            counts[text[i]] += 1;
+        }
+        return counts;
+    }
+
+    /** Return the number of occurrences of each pair of the SIZE letters
+     *  in TEXT[FROM .. TO-1], the pair a, b being counted at index
+     *  a * SIZE + b. */
+    static int[] bigrams(int[] text, int from, int to, int size) {
+        int[] counts = new int[size * size];
+        for (int i = from + 1; i < to; i += 1) {
+            counts[text[i - 1] * size + text[i]] += 1;
+        }
+        return counts;
+    }
+
+    /** Return the index of coincidence of a text whose letter counts are
+     *  COUNTS: the chance that two of its characters drawn without
+     *  replacement are the same. */
+    static double indexOfCoincidence(int[] counts) {
+        long pairs = 0, total = 0;
+        for (int n : counts) {
+            pairs += (long) n * (n - 1);
+            total += n;
+        }
+        return total < 2 ? 0 : (double) pairs / (total * (total - 1));
+    }
+
+    /** Return SIZE^N, the number of N-grams of SIZE letters, if it is
+     *  small enough to tabulate. */
+    private static int span(int size, int n) {
+        if (n < 1) {
+            throw error("n-grams must have at least one letter");
+        }
+        long span = 1;
+        for (int k = 0; k < n; k += 1) {
+            span *= size;
+            if (span > MAX_SPAN) {
+                throw error("n-gram table would be too large");
+            }
+        }
+        return (int) span;
+    }
+
+    /** Count given to unseen n-grams in computing their floor. */
+    private static final double FLOOR = 0.01;
+
+    /** Largest number of entries in a table. */
+    private static final int MAX_SPAN = 1 << 26;
+
+    /** Identifies n-gram table files. */
+    private static final int MAGIC = 0x4e47524d;
+
+    /** Version of the n-gram table layout. */
+    private static final int VERSION = 1;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Length of my n-grams. */
+    private final int _order;
+    /** Number of entries: alphabet size ^ _order. */
+    private final int _span;
+    /** Log-probabilities of the n-grams. */
+    private final FloatBuffer _logProbs;
+}
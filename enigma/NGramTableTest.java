@@ -0,0 +1,125 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the NGramTable class.
+ *  @author Melissa Ly
+ */
+public class NGramTableTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void testNGramTable() throws IOException {
+        Alphabet alpha = UPPER;
+        NGramTable table =
+            NGramTable.build(alpha, 2, "the cat sat on the mat, then ate");
+        int[] text = alpha.toInts("THECATATE");
+        int th = alpha.toInt('T') * 26 + alpha.toInt('H');
+        assertEquals(Math.log10(3.0 / 23), table.logProb(th), 1e-6);
+        assertTrue(table.logProb(alpha.toInt('Q') * 26) < table.logProb(th));
+        double expected = 0;
+        for (int i = 1; i < text.length; i += 1) {
+            expected += table.logProb(text[i - 1] * 26 + text[i]);
+        }
+        assertEquals(expected, table.score(text), 1e-9);
+
+        Path file = Files.createTempFile("enigma", ".ngrams");
+        try {
+            table.write(file);
+            NGramTable loaded = NGramTable.load(file);
+            assertEquals(2, loaded.order());
+            assertEquals(table.score(text), loaded.score(text), 0);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        NGramTable.Window window = table.window(4);
+        for (int i = 0; i < text.length; i += 1) {
+            window.push(text[i]);
+            int from = Math.max(0, i - 3);
+            assertEquals(table.score(text, from, i + 1), window.score(), 1e-9);
+            assertEquals(NGramTable.indexOfCoincidence(
+                    NGramTable.unigrams(text, from, i + 1, 26)),
+                    window.indexOfCoincidence(), 1e-12);
+        }
+        assertEquals(2, NGramTable.bigrams(text, 0, text.length, 26)[
+                alpha.toInt('A') * 26 + alpha.toInt('T')]);
+
+        NGramTable parsed = NGramTable.parse(alpha, 2,
+                new BufferedReader(new StringReader("TH 3\nHE 1\n")));
+        assertEquals(Math.log10(0.75), parsed.logProb(th), 1e-6);
+    }
+
+    @Test
+    public void testLoadBadHeader() throws IOException {
+        int[][] headers = {
+            {}, {MAGIC}, {MAGIC, 1, -1, 26}, {MAGIC, 1, 0, 26},
+            {MAGIC, 1, 2, -5}, {MAGIC, 1, 2, 0}, {MAGIC, 1, 2, 1000},
+            {MAGIC, 1, 2, 26}, {MAGIC, 1, 40, 26}, {MAGIC + 1, 1, 2, 26},
+        };
+        Path file = Files.createTempFile("enigma", ".ngrams");
+        try {
+            for (int[] header : headers) {
+                ByteBuffer bytes =
+                    ByteBuffer.allocate(header.length * Integer.BYTES + 6);
+                for (int word : header) {
+                    bytes.putInt(word);
+                }
+                bytes.putChar('A').putChar('B').putChar('C');
+                Files.write(file, bytes.array());
+                try {
+                    NGramTable.load(file);
+                    fail("loaded " + Arrays.toString(header));
+                } catch (EnigmaException excp) {
+                    /* Expected. */
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testWriteFailureLeavesNoFiles() throws IOException {
+        NGramTable table = NGramTable.build(UPPER, 1, "ABC");
+        Path dir = Files.createTempDirectory("enigma");
+        Path blocked = dir.resolve("blocked"), inside = blocked.resolve("x");
+        try {
+            Files.createDirectory(blocked);
+            Files.createFile(inside);
+            try {
+                table.write(blocked);
+                fail("wrote over a directory");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(1, files.count());
+            }
+        } finally {
+            Files.deleteIfExists(inside);
+            Files.deleteIfExists(blocked);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /** The magic number of n-gram table files. */
+    private static final int MAGIC = 0x4e47524d;
+}
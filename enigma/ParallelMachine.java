@@ -0,0 +1,110 @@
+package enigma;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Converts long messages on a Machine by splitting them into segments
+ *  that are converted concurrently, each on its own copy of the machine
+ *  sought to the segment's offset.  The results, and the state the
+ *  machine is left in, are the same as for Machine.convert.
+ *  @author Melissa Ly
+ */
+class ParallelMachine {
+
+    /** A converter for MACHINE that runs in POOL, converting segments
+     *  of at most SEGMENT characters at a time. */
+    ParallelMachine(Machine machine, ForkJoinPool pool, int segment) {
+        if (segment <= 0) {
+            throw new EnigmaException("segment length must be positive");
+        }
+        _machine = machine;
+        _pool = pool;
+        _segment = segment;
+    }
+
+    /** A converter for MACHINE that runs in the common fork/join pool
+     *  with segments of DEFAULT_SEGMENT characters. */
+    ParallelMachine(Machine machine) {
+        this(machine, ForkJoinPool.commonPool(), DEFAULT_SEGMENT);
+    }
+
+    /** Return my machine. */
+    Machine machine() {
+        return _machine;
+    }
+
+    /** Returns the encoding/decoding of MSG, updating the state of my
+     *  machine accordingly. */
+    String convert(String msg) {
+        char[] buffer = msg.toCharArray();
+        convert(buffer, 0, buffer, 0, buffer.length);
+        return new String(buffer);
+    }
+
+    /** Convert the LEN characters of SRC starting at SRCPOS, storing the
+     *  results into DEST starting at DESTPOS and updating the state of my
+     *  machine accordingly.  SRC and DEST may be the same array. */
+    void convert(char[] src, int srcPos, char[] dest, int destPos, int len) {
+        if (len <= _segment) {
+            _machine.convert(src, srcPos, dest, destPos, len);
+            return;
+        }
+        _pool.invoke(new Segment(_machine, src, srcPos, dest, destPos,
+                                 0, len));
+        _machine.seek(len);
+    }
+
+    /** The conversion of the characters at offsets [_lo .. _hi) of a
+     *  message, as a fork/join task. */
+    private class Segment extends RecursiveAction {
+
+        /** A task converting the characters at offsets LO to HI-1 of the
+         *  message starting at SRC[SRCPOS] into DEST starting at DESTPOS,
+         *  where offset 0 is converted by BASE in its current state. */
+        Segment(Machine base, char[] src, int srcPos, char[] dest,
+                int destPos, int lo, int hi) {
+            _base = base;
+            _src = src;
+            _srcPos = srcPos;
+            _dest = dest;
+            _destPos = destPos;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= _segment) {
+                Machine machine = _base.copy();
+                machine.seek(_lo);
+                machine.convert(_src, _srcPos + _lo, _dest, _destPos + _lo,
+                                _hi - _lo);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Segment(_base, _src, _srcPos, _dest, _destPos,
+                                      _lo, mid),
+                          new Segment(_base, _src, _srcPos, _dest, _destPos,
+                                      mid, _hi));
+            }
+        }
+
+        /** The machine in its state before the first character. */
+        private final Machine _base;
+        /** Source and destination arrays. */
+        private final char[] _src, _dest;
+        /** Positions of the message in _src and _dest. */
+        private final int _srcPos, _destPos;
+        /** Range of offsets I convert. */
+        private final int _lo, _hi;
+    }
+
+    /** Default maximum segment length. */
+    static final int DEFAULT_SEGMENT = 1 << 16;
+
+    /** The machine whose conversions I perform. */
+    private final Machine _machine;
+    /** Pool in which segments are converted. */
+    private final ForkJoinPool _pool;
+    /** Maximum number of characters converted by one task. */
+    private final int _segment;
+}
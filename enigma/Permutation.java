@@ -1,11 +1,12 @@
 package enigma;
 
-import java.util.ArrayList;
-
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  The cycles are compiled once into
+ *  forward and inverse lookup tables, so that applying the permutation or
+ *  its inverse is a single array access.  Permutations are immutable
+ *  and may be shared between threads.
  *  @author Melissa Ly
  */
 class Permutation {
@@ -16,74 +17,123 @@ class Permutation {
      *  included in any cycle map to themselves. Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        sortedList = new ArrayList<>();
-        for (int i = 0; i < _alphabet.size(); i++) {
-            sortedList.add(i);
+        _size = alphabet.size();
+        _forward = new char[_size];
+        _inverse = new char[_size];
+        for (int i = 0; i < _size; i += 1) {
+            _forward[i] = (char) i;
+            _inverse[i] = (char) i;
+        }
+        int start = -1;
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char c = cycles.charAt(i);
+            if (c == '(') {
+                if (start >= 0) {
+                    throw error("nested cycle in permutation");
+                }
+                start = i + 1;
+            } else if (c == ')') {
+                if (start < 0) {
+                    throw error("unbalanced cycle in permutation");
+                }
+                addCycle(cycles.substring(start, i).replaceAll("\\s+", ""));
+                start = -1;
+            } else if (start < 0 && !Character.isWhitespace(c)) {
+                throw error("character '%c' outside of cycle", c);
+            }
         }
-        String[] arrayOfStrings;
-        cycles = cycles.replaceAll("[)(]", "");
-        arrayOfStrings = cycles.split(" ");
-        for (String c: arrayOfStrings) {
-            addCycle(c);
+        if (start >= 0) {
+            throw error("unterminated cycle in permutation");
+        }
+        boolean derangement = true;
+        for (int i = 0; i < _size; i += 1) {
+            if (_forward[i] == i) {
+                derangement = false;
+                break;
+            }
         }
+        _derangement = derangement;
+    }
+
+    /** Set this Permutation to the one mapping each index i of ALPHABET to
+     *  MAPPING[i], which must be a permutation of 0 .. ALPHABET.size()-1. */
+    Permutation(int[] mapping, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        if (mapping.length != _size) {
+            throw error("mapping does not match alphabet");
+        }
+        _forward = new char[_size];
+        _inverse = new char[_size];
+        boolean[] seen = new boolean[_size];
+        boolean derangement = true;
+        for (int i = 0; i < _size; i += 1) {
+            int to = mapping[i];
+            if (to < 0 || to >= _size || seen[to]) {
+                throw error("mapping is not a permutation");
+            }
+            seen[to] = true;
+            _forward[i] = (char) to;
+            _inverse[to] = (char) i;
+            derangement &= to != i;
+        }
+        _derangement = derangement;
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     private void addCycle(String cycle) {
-        for (int i = 0; i < cycle.length(); i++) {
-            char c = cycle.charAt(i);
-            if (cycle.length() < 1) {
-                sortedList.set(_alphabet.toInt(c),
-                        _alphabet.toInt(cycle.charAt(i)));
-            } else if (i != (cycle.length() - 1)) {
-                sortedList.set(_alphabet.toInt(c),
-                        alphabet().toInt(cycle.charAt(i + 1)));
-            } else {
-                sortedList.set(_alphabet.toInt(c),
-                        alphabet().toInt(cycle.charAt(0)));
-            }
+        int n = cycle.length();
+        for (int i = 0; i < n; i += 1) {
+            int from = _alphabet.toInt(cycle.charAt(i));
+            int to = _alphabet.toInt(cycle.charAt((i + 1) % n));
+            _forward[from] = (char) to;
+            _inverse[to] = (char) from;
         }
     }
 
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
-        int r = p % size();
+        int r = p % _size;
         if (r < 0) {
-            r += size();
+            r += _size;
         }
         return r;
     }
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _size;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. If p is greater than alphabet
      *  size then you will get the remainder */
     int permute(int p) {
-        return sortedList.get(wrap(p));
+        if (p >= 0 && p < _size) {
+            return _forward[p];
+        }
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        return sortedList.indexOf(wrap(c));
+        if (c >= 0 && c < _size) {
+            return _inverse[c];
+        }
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        int i = _alphabet.toInt(p);
-        return _alphabet.toChar(permute(i));
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
-    int invert(char c) {
-        int i = _alphabet.toInt(c);
-        return _alphabet.toChar(invert(i));
+    char invert(char c) {
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -94,19 +144,19 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (int i : sortedList) {
-            if (i == sortedList.indexOf(i)) {
-                return false;
-            }
-        }
-        return true;
+        return _derangement;
     }
 
     /** Alphabet of this permutation. */
-    private Alphabet _alphabet;
+    private final Alphabet _alphabet;
     /** Size of alphabet. */
-    private int size;
-    /** ArrayList to store the permuted list. */
-    private ArrayList<Integer> sortedList;
+    private final int _size;
+    /** Forward mapping: _forward[i] is the image of index i.  Indices
+     *  are held as chars, since no alphabet has more members than there
+     *  are chars, halving the size of the tables. */
+    private final char[] _forward;
+    /** Inverse mapping: _inverse[i] is the preimage of index i. */
+    private final char[] _inverse;
+    /** True iff no index maps to itself. */
+    private final boolean _derangement;
 }
-
@@ -70,4 +70,27 @@ public class PermutationTest {
         assertEquals(16, test.invert(16));
     }
 
+    @Test
+    public void testAllNavalRotors() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+
+    @Test
+    public void testDerangement() {
+        assertTrue(new Permutation(NAVALA.get("B"), UPPER).derangement());
+        assertFalse(new Permutation(NAVALA.get("I"), UPPER).derangement());
+        assertFalse(new Permutation("", UPPER).derangement());
+    }
+
+    @Test
+    public void testWrapAround() {
+        Permutation test = new Permutation(NAVALA.get("I"), UPPER);
+        assertEquals(test.permute(3), test.permute(3 + 26));
+        assertEquals(test.permute(25), test.permute(-1));
+        assertEquals(test.invert(0), test.invert(-26));
+    }
+
 }
@@ -0,0 +1,281 @@
+package enigma;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+import static enigma.EnigmaException.*;
+
+/** A three-stage pipeline for Main: a reader thread parses the input
+ *  into batches of message text, a pool of threads converts them, and
+ *  the calling thread writes the results.  Each settings line gets its
+ *  own Machine, so batches under different settings lines are converted
+ *  concurrently, while those under one settings line are converted in
+ *  order.  Output appears in input order and is the same as that of
+ *  sequential processing: an error is recorded with the line on which it
+ *  occurs, and reported once the lines before that one are written.
+ *  The stages are connected by a bounded queue, so the reader
+ *  never gets more than a fixed number of batches ahead of the writer.
+ *  @author Melissa Ly
+ */
+class Pipeline {
+
+    /** A pipeline reading messages from INPUT and writing them to OUTPUT
+     *  using THREADS conversion threads.  Settings lines are applied with
+     *  CONFIGURE to TEMPLATE, of which each settings block then converts
+     *  its messages on a copy, so that whatever a settings line leaves
+     *  unchanged carries over to the next block as it would when
+     *  converting sequentially on TEMPLATE. */
+    Pipeline(MessageReader input, MessageWriter output, Machine template,
+             BiConsumer<Machine, String> configure, int threads) {
+        _input = input;
+        _output = output;
+        _template = template;
+        _configure = configure;
+        _threads = threads;
+    }
+
+    /** Process all of my input. */
+    void run() {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads, r -> {
+            Thread t = new Thread(r, "enigma-convert");
+            t.setDaemon(true);
+            return t;
+        });
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_LENGTH);
+        Thread reader = new Thread(() -> read(queue, pool), "enigma-read");
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            write(queue);
+        } finally {
+            reader.interrupt();
+            pool.shutdownNow();
+        }
+    }
+
+    /** The reader stage: parse my input into batches, start their
+     *  conversions in POOL, and put them on QUEUE in input order,
+     *  ending with END or, if anything goes wrong, with a batch
+     *  carrying the error, so that the writer always has an end. */
+    private void read(BlockingQueue<Batch> queue, ExecutorService pool) {
+        Batch batch = null;
+        CompletableFuture<Machine> tail = null;
+        try {
+            char[] buffer = new char[BATCH_SIZE];
+            while (_input.nextLine()) {
+                if (_input.isSettings()) {
+                    submit(queue, batch, tail, pool);
+                    batch = null;
+                    _configure.accept(_template, _input.rest());
+                    tail = CompletableFuture.completedFuture(_template.copy());
+                } else if (tail == null) {
+                    if (_input.read(buffer, 0, buffer.length) >= 0) {
+                        throw new EnigmaException(
+                                "Config beginning does not have *");
+                    }
+                    if (batch == null) {
+                        batch = new Batch();
+                    }
+                    batch.endLine();
+                } else {
+                    Metrics.message();
+                    while (true) {
+                        if (batch == null) {
+                            batch = new Batch();
+                        }
+                        int n = _input.read(batch.text, batch.length,
+                                            BATCH_SIZE - batch.length);
+                        if (n < 0) {
+                            break;
+                        }
+                        batch.length += n;
+                        if (batch.length == BATCH_SIZE) {
+                            tail = submit(queue, batch, tail, pool);
+                            batch = null;
+                        }
+                    }
+                    batch.endLine();
+                }
+            }
+            submit(queue, batch, tail, pool);
+            queue.put(END);
+        } catch (RuntimeException | Error excp) {
+            if (batch == null) {
+                batch = new Batch();
+            }
+            batch.fail(excp, batch.lines == 0 ? 0
+                       : batch.lineEnds[batch.lines - 1]);
+            try {
+                submit(queue, batch, tail, pool);
+            } catch (InterruptedException interrupted) {
+                return;
+            }
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Put BATCH, if not null, on QUEUE, with its conversion by the
+     *  machine produced by TAIL started in POOL after TAIL's earlier
+     *  conversions.  Batches with no machine are passed through
+     *  unchanged.  Returns the machine after the conversion, which
+     *  fails if the conversion reports an error. */
+    private CompletableFuture<Machine> submit(BlockingQueue<Batch> queue,
+                                              Batch batch,
+                                              CompletableFuture<Machine> tail,
+                                              ExecutorService pool)
+        throws InterruptedException {
+        if (batch == null) {
+            return tail;
+        }
+        if (tail == null) {
+            batch.done = CompletableFuture.completedFuture(null);
+        } else {
+            tail = tail.thenApplyAsync(m -> {
+                batch.convert(m);
+                return m;
+            }, pool);
+            batch.done = tail;
+        }
+        queue.put(batch);
+        return tail;
+    }
+
+    /** The writer stage: write the batches on QUEUE, in order, as each
+     *  one's conversion finishes, up to END.  At a batch with an error,
+     *  writes the lines before the one on which it occurred, as
+     *  sequential processing would, and then throws it. */
+    private void write(BlockingQueue<Batch> queue) {
+        try {
+            while (true) {
+                Batch batch = queue.take();
+                if (batch == END) {
+                    return;
+                }
+                try {
+                    batch.done.join();
+                } catch (CompletionException excp) {
+                    if (batch.failure == null) {
+                        if (excp.getCause() instanceof EnigmaException) {
+                            throw (EnigmaException) excp.getCause();
+                        }
+                        throw excp;
+                    }
+                }
+                int start = 0;
+                for (int i = 0; i < batch.lines; i += 1) {
+                    if (batch.failure != null
+                            && batch.lineEnds[i] > batch.failedAt) {
+                        break;
+                    }
+                    _output.write(batch.text, start,
+                                  batch.lineEnds[i] - start);
+                    _output.endLine();
+                    start = batch.lineEnds[i];
+                }
+                if (batch.failure != null) {
+                    batch.rethrow();
+                }
+                _output.write(batch.text, start, batch.length - start);
+            }
+        } catch (InterruptedException excp) {
+            throw error("interrupted while writing output");
+        }
+    }
+
+    /** A block of message text and the places where its lines end,
+     *  with the first error met in reading or converting it.  Errors
+     *  other than EnigmaExceptions are passed along as well, so that
+     *  they reach the writer rather than ending the reader silently. */
+    private static class Batch {
+        /** Message characters. */
+        private final char[] text = new char[BATCH_SIZE];
+        /** Number of characters in text. */
+        private int length;
+        /** Offsets in text at which lines end, in order. */
+        private int[] lineEnds = new int[INITIAL_LINES];
+        /** Number of lines ended in this batch. */
+        private int lines;
+        /** Completes when text has been converted. */
+        private CompletableFuture<?> done;
+        /** The first error in this batch, or null.  Always a
+         *  RuntimeException or an Error. */
+        private Throwable failure;
+        /** Offset in text of the start of the line on which failure
+         *  occurred; the lines ending at or before it are good. */
+        private int failedAt;
+
+        /** Record that EXCP occurred on the line starting at offset
+         *  START of text, unless an earlier error has been recorded. */
+        void fail(Throwable excp, int start) {
+            if (failure == null || start < failedAt) {
+                failure = excp;
+                failedAt = start;
+            }
+        }
+
+        /** Throw my failure, which is not null. */
+        void rethrow() {
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw (RuntimeException) failure;
+        }
+
+        /** Convert text with M a line at a time, up to any recorded
+         *  failure, recording and rethrowing any error M reports. */
+        void convert(Machine m) {
+            int limit = failure == null ? length : failedAt;
+            int start = 0;
+            for (int i = 0; i <= lines && start < limit; i += 1) {
+                int end = i < lines ? Math.min(lineEnds[i], limit) : limit;
+                try {
+                    m.convert(text, start, text, start, end - start);
+                } catch (EnigmaException excp) {
+                    fail(excp, start);
+                    throw excp;
+                }
+                start = end;
+            }
+        }
+
+        /** End the current line at the current end of text. */
+        void endLine() {
+            if (lines == lineEnds.length) {
+                int[] larger = new int[2 * lines];
+                System.arraycopy(lineEnds, 0, larger, 0, lines);
+                lineEnds = larger;
+            }
+            lineEnds[lines] = length;
+            lines += 1;
+        }
+    }
+
+    /** Maximum number of characters in a batch. */
+    static final int BATCH_SIZE = 1 << 16;
+
+    /** Maximum number of batches read ahead of the writer. */
+    static final int QUEUE_LENGTH = 64;
+
+    /** Initial capacity for line ends in a batch. */
+    private static final int INITIAL_LINES = 256;
+
+    /** Marks the end of input on the queue. */
+    private static final Batch END = new Batch();
+
+    /** Source of input. */
+    private final MessageReader _input;
+    /** Destination of output. */
+    private final MessageWriter _output;
+    /** Machine to which settings lines are applied. */
+    private final Machine _template;
+    /** Applies a settings line to a machine. */
+    private final BiConsumer<Machine, String> _configure;
+    /** Number of conversion threads. */
+    private final int _threads;
+}
@@ -0,0 +1,169 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Pipeline class, which check
+ *  that pipelined processing prints what sequential processing does.
+ *  @author Melissa Ly
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** A configuration with the naval rotors I-V, BETA, GAMMA, B and C. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ 5 3\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + " V MZ (AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)\n"
+        + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " Gamma N (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "     (RX) (SZ) (TV)\n"
+        + " C R (AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW)\n"
+        + "     (QZ) (SX) (UY)\n";
+
+    /** Return the output of running Main with OPTIONS on CONFIG and
+     *  INPUT, followed by the message of the error that stopped it, if
+     *  any. */
+    private static String run(String input, String... options)
+        throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path config = dir.resolve("test.conf"), in = dir.resolve("test.in"),
+            out = dir.resolve("test.out");
+        try {
+            Files.write(config, CONFIG.getBytes(StandardCharsets.UTF_8));
+            Files.write(in, input.getBytes(StandardCharsets.UTF_8));
+            String[] args = new String[options.length + 3];
+            System.arraycopy(options, 0, args, 0, options.length);
+            args[options.length] = config.toString();
+            args[options.length + 1] = in.toString();
+            args[options.length + 2] = out.toString();
+            String error = "";
+            try {
+                new Main(args).process();
+            } catch (EnigmaException excp) {
+                error = "Error: " + excp.getMessage();
+            }
+            return new String(Files.readAllBytes(out),
+                              StandardCharsets.UTF_8) + error;
+        } finally {
+            Files.deleteIfExists(config);
+            Files.deleteIfExists(in);
+            Files.deleteIfExists(out);
+            Files.delete(dir);
+        }
+    }
+
+    /** Assert that pipelined processing of INPUT prints the same as
+     *  sequential processing, and return what it prints. */
+    private static String checkSame(String input) throws IOException {
+        String sequential = run(input);
+        for (int threads = 1; threads <= 4; threads *= 2) {
+            assertEquals(threads + " threads", sequential,
+                         run(input, "--pipeline=" + threads));
+        }
+        return sequential;
+    }
+
+    @Test
+    public void testNoErrors() throws IOException {
+        String output = checkSame("* B BETA III IV I AXLE (HQ) (EX) (IP)"
+                                  + " (TR) (BY)\n"
+                                  + "FROM HIS SHOULDER HIAWATHA\n\n"
+                                  + "* C GAMMA I II V ZZZZ\nabc def\n");
+        assertTrue(output.startsWith("QVPQS OKOIL PUBKJ ZPISF XDW"));
+    }
+
+    @Test
+    public void testBadCharacter() throws IOException {
+        String output = checkSame("* B BETA III IV I AXLE (HQ) (EX) (IP)"
+                                  + " (TR) (BY)\n"
+                                  + "FROM HIS SHOULDER\nHIAWATHA\n"
+                                  + "TOOK THE 1\nCAMERA\n");
+        String nl = System.lineSeparator();
+        assertEquals("QVPQS OKOIL PUBKJ" + nl + "ZPISF XDW" + nl
+                     + "Error: character 1 not in alphabet", output);
+    }
+
+    @Test
+    public void testErrorInLaterBlock() throws IOException {
+        checkSame("* B BETA III IV I AXLE\nHELLO WORLD\n"
+                  + "* C GAMMA I II V ZZZZ\nGOOD LINE\nBAD LINE 9\n"
+                  + "* B BETA III IV I AXLE\nNEVER CONVERTED\n");
+    }
+
+    @Test
+    public void testBadSettingsLine() throws IOException {
+        checkSame("* B BETA III IV I AXLE\nHELLO\n\nWORLD\n"
+                  + "* B BETA III IV NOSUCHROTOR AXLE\nNEVER CONVERTED\n");
+    }
+
+    @Test
+    public void testMessageBeforeSettings() throws IOException {
+        checkSame("\n\nHELLO\n* B BETA III IV I AXLE\nWORLD\n");
+    }
+
+    @Test
+    public void testErrorAfterLongLines() throws IOException {
+        StringBuilder input = new StringBuilder("* B BETA III IV I AXLE\n");
+        for (int k = 0; k < 3; k += 1) {
+            for (int i = 0; i < Pipeline.BATCH_SIZE / 2 + 17; i += 1) {
+                input.append((char) ('A' + i % 26));
+            }
+            input.append('\n');
+        }
+        input.append("SHORT\nBAD-\nAFTER\n");
+        checkSame(input.toString());
+    }
+
+    @Test
+    public void testUnexpectedError() {
+        byte[] input = ("* B Beta III IV I AXLE\nHELLO\n"
+                        + "* B Beta III IV I QEVZ\nX\n")
+            .getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageWriter output =
+            new MessageWriter(Channels.newChannel(bytes), false);
+        Machine template = navalMachine("AAAA", "");
+        int[] settingsLines = {0};
+        Pipeline pipeline = new Pipeline(
+                new MessageReader(Channels.newChannel(
+                        new ByteArrayInputStream(input))),
+                output, template, (m, line) -> {
+                    settingsLines[0] += 1;
+                    if (settingsLines[0] == 2) {
+                        throw new IllegalStateException("unexpected");
+                    }
+                    Settings.parse(m.numRotors(), line).apply(m);
+                }, 2);
+        try {
+            pipeline.run();
+            fail("error not reported");
+        } catch (IllegalStateException excp) {
+            assertEquals("unexpected", excp.getMessage());
+        }
+        output.flush();
+        assertEquals(navalMachine("AXLE", "").convert("HELLO")
+                     + System.lineSeparator(),
+                     new String(bytes.toByteArray(),
+                                StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,369 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers the plugboard of a ciphertext whose rotors and start
+ *  positions are known, by hill climbing on the index of coincidence of
+ *  the decryption.  A climb starts from a random plugboard and
+ *  repeatedly tries connecting each pair of letters (first disconnecting
+ *  them from any partners, or disconnecting them if they are already
+ *  connected to each other), keeping any change that raises the score,
+ *  until no change does.
+ *
+ *  With plugboard P, the decryption of ciphertext letter c at step i is
+ *  P(S_i(P(c))), where S_i is the scrambler (the machine without its
+ *  plugboard) at step i.  The scramblers are computed once.  Each climb
+ *  keeps, for each letter, the steps whose ciphertext is that letter
+ *  and the steps whose scrambler output is that letter, so a change to
+ *  the partners of at most four letters re-scores only the steps that
+ *  involve them.  Random restarts run concurrently in a fork/join pool
+ *  and publish their results to a shared best result.
+ *  @author Melissa Ly
+ */
+class PlugboardClimber {
+
+    /** A climber for CIPHERTEXT, which MACHINE (whose plugboard is
+     *  ignored) would convert from its current rotor positions, running
+     *  in POOL.  Whitespace in CIPHERTEXT is ignored. */
+    PlugboardClimber(Machine machine, String ciphertext, ForkJoinPool pool) {
+        _alphabet = machine.spec().alphabet();
+        _size = _alphabet.size();
+        _cipher = _alphabet.toInts(ciphertext.replaceAll("\\s+", ""));
+        _length = _cipher.length;
+        if (_length < 2) {
+            throw error("ciphertext too short to score");
+        }
+        _pool = pool;
+        Machine scrambler = machine.copy();
+        scrambler.setPlugboard(null);
+        _scramblers = new int[_length * _size];
+        for (int i = 0; i < _length; i += 1) {
+            scrambler.advanceRotors();
+            scrambler.substitution(_scramblers, i * _size);
+        }
+        int[] counts = new int[_size];
+        for (int c : _cipher) {
+            counts[c] += 1;
+        }
+        _byCipher = new int[_size][];
+        for (int c = 0; c < _size; c += 1) {
+            _byCipher[c] = new int[counts[c]];
+            counts[c] = 0;
+        }
+        for (int i = 0; i < _length; i += 1) {
+            int c = _cipher[i];
+            _byCipher[c][counts[c]] = i;
+            counts[c] += 1;
+        }
+    }
+
+    /** A climber for CIPHERTEXT, which MACHINE would convert from its
+     *  current rotor positions, running in the common fork/join pool. */
+    PlugboardClimber(Machine machine, String ciphertext) {
+        this(machine, ciphertext, ForkJoinPool.commonPool());
+    }
+
+    /** A plugboard found by climbing, with its score. */
+    static final class Result {
+        /** A result with plugboard cycles PLUGBOARD, whose decryption
+         *  has index of coincidence SCORE. */
+        Result(String plugboard, double score) {
+            _plugboard = plugboard;
+            _score = score;
+        }
+
+        /** Return my plugboard, as cycles in the form accepted by
+         *  Permutation, such as "(AB) (EX)". */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the index of coincidence of my decryption. */
+        double score() {
+            return _score;
+        }
+
+        @Override
+        public String toString() {
+            return _plugboard + " " + _score;
+        }
+
+        /** My plugboard cycles. */
+        private final String _plugboard;
+        /** My score. */
+        private final double _score;
+    }
+
+    /** Return the best result of RESTARTS climbs from random plugboards
+     *  of at most MAXPAIRS pairs, never connecting more than MAXPAIRS
+     *  pairs.  The starting plugboards are drawn from a generator seeded
+     *  with SEED. */
+    Result climb(int restarts, int maxPairs, long seed) {
+        if (restarts <= 0 || maxPairs < 0 || 2 * maxPairs > _size) {
+            throw error("bad number of restarts or plugboard pairs");
+        }
+        AtomicReference<Result> best = new AtomicReference<>();
+        ArrayList<Climb> tasks = new ArrayList<>();
+        for (int r = 0; r < restarts; r += 1) {
+            tasks.add(new Climb(new Random(seed + r), maxPairs, best));
+        }
+        if (tasks.size() == 1) {
+            tasks.get(0).compute();
+        } else {
+            _pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        return best.get();
+    }
+
+    /** One climb from a random plugboard. */
+    private class Climb extends RecursiveAction {
+        /** A climb starting from a plugboard drawn from RANDOM, with at
+         *  most MAXPAIRS pairs, whose result is offered to BEST. */
+        Climb(Random random, int maxPairs, AtomicReference<Result> best) {
+            _random = random;
+            _maxPairs = maxPairs;
+            _best = best;
+        }
+
+        @Override
+        protected void compute() {
+            int size = _size;
+            _plug = new int[size];
+            _outputs = new int[_length];
+            _plain = new int[_length];
+            _counts = new int[size];
+            _head = new int[size];
+            _next = new int[_length];
+            _prev = new int[_length];
+            Arrays.fill(_head, -1);
+            int[] shuffled = new int[size];
+            for (int c = 0; c < size; c += 1) {
+                _plug[c] = c;
+                shuffled[c] = c;
+            }
+            for (int k = size - 1; k > 0; k -= 1) {
+                int j = _random.nextInt(k + 1);
+                int t = shuffled[k];
+                shuffled[k] = shuffled[j];
+                shuffled[j] = t;
+            }
+            _pairs = _random.nextInt(_maxPairs + 1);
+            for (int k = 0; k < 2 * _pairs; k += 2) {
+                _plug[shuffled[k]] = shuffled[k + 1];
+                _plug[shuffled[k + 1]] = shuffled[k];
+            }
+            for (int i = 0; i < _length; i += 1) {
+                int y = _scramblers[i * size + _plug[_cipher[i]]];
+                _outputs[i] = y;
+                link(i, y);
+                _plain[i] = _plug[y];
+                _counts[_plain[i]] += 1;
+            }
+            for (int c = 0; c < size; c += 1) {
+                _sum += (long) _counts[c] * (_counts[c] - 1);
+            }
+
+            int[] letters = new int[4], partners = new int[4];
+            int[] old = new int[4];
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < size; a += 1) {
+                    for (int b = a + 1; b < size; b += 1) {
+                        int pairs = _pairs;
+                        int n = move(a, b, letters, partners);
+                        if (n == 0) {
+                            continue;
+                        }
+                        for (int k = 0; k < n; k += 1) {
+                            old[k] = _plug[letters[k]];
+                        }
+                        long before = _sum;
+                        rewire(letters, partners, n);
+                        if (_sum > before) {
+                            improved = true;
+                        } else {
+                            rewire(letters, old, n);
+                            _pairs = pairs;
+                        }
+                    }
+                }
+            }
+            offer();
+        }
+
+        /** Fill LETTERS[0 .. n-1] with the letters whose partners change
+         *  if A and B are connected (or, if they are connected, are
+         *  disconnected), and PARTNERS[0 .. n-1] with their new partners,
+         *  and return n.  Return 0 if the change would exceed the
+         *  maximum number of pairs. */
+        private int move(int a, int b, int[] letters, int[] partners) {
+            int n = 0;
+            if (_plug[a] == b) {
+                letters[n] = a;
+                partners[n++] = a;
+                letters[n] = b;
+                partners[n++] = b;
+                _pairs -= 1;
+                return n;
+            }
+            int pa = _plug[a], pb = _plug[b];
+            int pairs = _pairs + 1 - (pa != a ? 1 : 0) - (pb != b ? 1 : 0);
+            if (pairs > _maxPairs) {
+                return 0;
+            }
+            _pairs = pairs;
+            if (pa != a) {
+                letters[n] = pa;
+                partners[n++] = pa;
+            }
+            if (pb != b) {
+                letters[n] = pb;
+                partners[n++] = pb;
+            }
+            letters[n] = a;
+            partners[n++] = b;
+            letters[n] = b;
+            partners[n++] = a;
+            return n;
+        }
+
+        /** Make PARTNERS[k] the partner of LETTERS[k] for k < N, and
+         *  re-score the steps whose ciphertext or scrambler output is
+         *  one of LETTERS. */
+        private void rewire(int[] letters, int[] partners, int n) {
+            for (int k = 0; k < n; k += 1) {
+                _plug[letters[k]] = partners[k];
+            }
+            for (int k = 0; k < n; k += 1) {
+                for (int i : _byCipher[letters[k]]) {
+                    int y = _scramblers[i * _size + _plug[_cipher[i]]];
+                    if (y != _outputs[i]) {
+                        unlink(i, _outputs[i]);
+                        _outputs[i] = y;
+                        link(i, y);
+                    }
+                    setPlain(i, _plug[y]);
+                }
+            }
+            for (int k = 0; k < n; k += 1) {
+                int p = _plug[letters[k]];
+                for (int i = _head[letters[k]]; i >= 0; i = _next[i]) {
+                    setPlain(i, p);
+                }
+            }
+        }
+
+        /** Make V the decryption of step I, updating the score. */
+        private void setPlain(int i, int v) {
+            int u = _plain[i];
+            if (u != v) {
+                _counts[u] -= 1;
+                _sum -= 2L * _counts[u];
+                _sum += 2L * _counts[v];
+                _counts[v] += 1;
+                _plain[i] = v;
+            }
+        }
+
+        /** Add step I to the list of steps whose scrambler output is
+         *  Y. */
+        private void link(int i, int y) {
+            _prev[i] = -1;
+            _next[i] = _head[y];
+            if (_head[y] >= 0) {
+                _prev[_head[y]] = i;
+            }
+            _head[y] = i;
+        }
+
+        /** Remove step I from the list of steps whose scrambler output
+         *  is Y. */
+        private void unlink(int i, int y) {
+            if (_prev[i] >= 0) {
+                _next[_prev[i]] = _next[i];
+            } else {
+                _head[y] = _next[i];
+            }
+            if (_next[i] >= 0) {
+                _prev[_next[i]] = _prev[i];
+            }
+        }
+
+        /** Offer my plugboard to _best, replacing the result there if
+         *  mine scores higher. */
+        private void offer() {
+            StringBuilder cycles = new StringBuilder();
+            for (int c = 0; c < _size; c += 1) {
+                if (_plug[c] > c) {
+                    if (cycles.length() > 0) {
+                        cycles.append(' ');
+                    }
+                    cycles.append('(').append(_alphabet.toChar(c))
+                        .append(_alphabet.toChar(_plug[c])).append(')');
+                }
+            }
+            Result mine = new Result(cycles.toString(),
+                                     (double) _sum
+                                     / ((long) _length * (_length - 1)));
+            Result current;
+            do {
+                current = _best.get();
+                if (current != null && current.score() >= mine.score()) {
+                    return;
+                }
+            } while (!_best.compareAndSet(current, mine));
+        }
+
+        /** Source of my starting plugboard. */
+        private final Random _random;
+        /** Maximum number of plugboard pairs. */
+        private final int _maxPairs;
+        /** Shared best result. */
+        private final AtomicReference<Result> _best;
+        /** _plug[c] is the current partner of c (c itself if none). */
+        private int[] _plug;
+        /** Current number of plugboard pairs. */
+        private int _pairs;
+        /** _outputs[i] is the scrambler output at step i. */
+        private int[] _outputs;
+        /** _plain[i] is the decryption of step i. */
+        private int[] _plain;
+        /** _counts[c] is the number of steps decrypted to c. */
+        private int[] _counts;
+        /** Sum of _counts[c] * (_counts[c] - 1) over all c. */
+        private long _sum;
+        /** Doubly linked lists of the steps with each scrambler output:
+         *  _head[y] is the first step whose output is y (-1 if none), and
+         *  _next and _prev link the steps of a list. */
+        private int[] _head, _next, _prev;
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _size;
+    /** The ciphertext, as indices. */
+    private final int[] _cipher;
+    /** Length of _cipher. */
+    private final int _length;
+    /** _scramblers[i * size + x] is the conversion of x by the machine
+     *  without plugboard at step i. */
+    private final int[] _scramblers;
+    /** _byCipher[c] lists the steps whose ciphertext is c. */
+    private final int[][] _byCipher;
+    /** Pool in which climbs run. */
+    private final ForkJoinPool _pool;
+}
@@ -0,0 +1,48 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PlugboardClimber class.
+ *  @author Melissa Ly
+ */
+public class PlugboardClimberTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void testPlugboardClimber() {
+        String plugs = "(AK) (BY) (EX) (HQ) (IP) (RT)";
+        Machine machine = navalMachine("AXLE", plugs);
+        String plain =
+            "ITWASTHEBESTOFTIMESITWASTHEWORSTOFTIMESITWASTHEAGEOFWISDOM"
+            + "ITWASTHEAGEOFFOOLISHNESSITWASTHEEPOCHOFBELIEFITWASTHEEPOCH"
+            + "OFINCREDULITYITWASTHESEASONOFLIGHTITWASTHESEASONOFDARKNESS"
+            + "ITWASTHESPRINGOFHOPEITWASTHEWINTEROFDESPAIRWEHADEVERYTHING"
+            + "BEFOREUSWEHADNOTHINGBEFOREUSWEWEREALLGOINGDIRECTTOHEAVEN"
+            + "WEWEREALLGOINGDIRECTTHEOTHERWAYINSHORTTHEPERIODWASSOFAR"
+            + "LIKETHEPRESENTPERIODTHATSOMEOFITSNOISIESTAUTHORITIES"
+            + "INSISTEDONITSBEINGRECEIVEDFORGOODORFOREVIL";
+        String cipher = machine.convert(plain);
+        PlugboardClimber.Result result =
+            new PlugboardClimber(navalMachine("AXLE", ""), cipher)
+            .climb(20, 10, 61);
+        assertEquals(plugs, result.plugboard());
+        int[] counts = new int[26];
+        for (char c : plain.toCharArray()) {
+            counts[c - 'A'] += 1;
+        }
+        long pairs = 0;
+        for (int n : counts) {
+            pairs += (long) n * (n - 1);
+        }
+        long n = plain.length();
+        assertEquals((double) pairs / (n * (n - 1)), result.score(), 1e-12);
+    }
+}
@@ -16,6 +16,16 @@ class Reflector extends FixedRotor {
         }
     }
 
+    /** UNRINGED at ring setting RING, whose permutation is PERM. */
+    private Reflector(Reflector unringed, Permutation perm, int ring) {
+        super(unringed, perm, ring);
+    }
+
+    @Override
+    Rotor ringed(Permutation perm, int ring) {
+        return new Reflector(this, perm, ring);
+    }
+
     @Override
     boolean reflecting() {
         return true;
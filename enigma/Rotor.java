@@ -11,6 +11,65 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         this._name = name;
         _permutation = perm;
+        _ring = 0;
+        _unringed = this;
+    }
+
+    /** UNRINGED at ring setting RING, whose permutation is PERM. */
+    Rotor(Rotor unringed, Permutation perm, int ring) {
+        _name = unringed._name;
+        _permutation = perm;
+        _ring = ring;
+        _unringed = unringed;
+    }
+
+    /** Return a rotor of my kind, with my name (and notches, if any),
+     *  that is me at ring setting RING, with permutation PERM. */
+    Rotor ringed(Permutation perm, int ring) {
+        return new Rotor(this, perm, ring);
+    }
+
+    /** Return this rotor with its ring setting (Ringstellung) at RING,
+     *  where 0 <= RING < size().  Turning the ring moves my wiring
+     *  relative to my alphabet ring, which carries the notches and the
+     *  letter shown as my position, so at ring setting R the wiring W
+     *  acts as W(x - R) + R.  That is folded into the permutation of the
+     *  result, whose conversions therefore cost the same as mine.  The
+     *  same rotor object is returned for every request for a given ring
+     *  setting; those objects are cached by, and under the lock of, the
+     *  rotor at ring setting 0. */
+    Rotor withRing(int ring) {
+        if (_unringed != this) {
+            return _unringed.withRing(ring);
+        }
+        int size = size();
+        if (ring < 0 || ring >= size) {
+            throw error("ring setting out of range");
+        }
+        if (ring == 0) {
+            return this;
+        }
+        synchronized (this) {
+            if (_ringed == null) {
+                _ringed = new Rotor[size];
+            }
+            if (_ringed[ring] == null) {
+                int[] mapping = new int[size];
+                for (int y = 0; y < size; y += 1) {
+                    mapping[y] = _permutation.wrap(
+                        _permutation.permute(_permutation.wrap(y - ring))
+                        + ring);
+                }
+                _ringed[ring] =
+                    ringed(new Permutation(mapping, alphabet()), ring);
+            }
+            return _ringed[ring];
+        }
+    }
+
+    /** Return my ring setting. */
+    int ring() {
+        return _ring;
     }
 
     /** Return my name. */
@@ -62,16 +121,39 @@ class Rotor {
     /** Return the conversion    of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int conversion = permutation().
-                permute(permutation().wrap(p + _setting));
-        return permutation().wrap(conversion - _setting);
+        return convertForward(p, _permutation.wrap(_setting));
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int conversion = permutation().invert(permutation().wrap(e + _setting));
-        return permutation().wrap(conversion - _setting);
+        return convertBackward(e, _permutation.wrap(_setting));
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation when I am at setting POSN (also in
+     *  the range 0..size()-1). */
+    int convertForward(int p, int posn) {
+        int size = _permutation.size();
+        int k = p + posn;
+        if (k >= size) {
+            k -= size;
+        }
+        int conversion = _permutation.permute(k) - posn;
+        return conversion < 0 ? conversion + size : conversion;
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation when I am at
+     *  setting POSN (also in the range 0..size()-1). */
+    int convertBackward(int e, int posn) {
+        int size = _permutation.size();
+        int k = e + posn;
+        if (k >= size) {
+            k -= size;
+        }
+        int conversion = _permutation.invert(k) - posn;
+        return conversion < 0 ? conversion + size : conversion;
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -80,6 +162,18 @@ class Rotor {
         return false;
     }
 
+    /** Returns true iff I would be at a notch at setting POSN. */
+    boolean atNotch(int posn) {
+        return false;
+    }
+
+    /** Returns the number of single-position advances needed to bring me
+     *  from setting POSN to a notch (0 if POSN is itself a notch), or -1
+     *  if I have no notches. */
+    int positionsToNotch(int posn) {
+        return -1;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
 
@@ -94,9 +188,21 @@ class Rotor {
     private final String _name;
 
     /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
+    private final Permutation _permutation;
+
+    /** My ring setting, already folded into _permutation. */
+    private final int _ring;
+
+    /** This rotor at ring setting 0. */
+    private final Rotor _unringed;
+
+    /** If I am at ring setting 0, _ringed[r] is null or this rotor at
+     *  ring setting r; null until needed. */
+    private Rotor[] _ringed;
 
-    /** Current setting. */
+    /** Current setting, used by the single-argument conversions, atNotch()
+     *  and advance().  Machines keep their own rotor positions and never
+     *  change it, so one rotor may serve any number of machines. */
     private int _setting;
 
 }
@@ -0,0 +1,194 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running encryption service on a local TCP port.  The machine
+ *  description is loaded once; each connection then has its own machine
+ *  and speaks a line-oriented protocol in the format of Main's input:
+ *  a settings line (starting with '*') sets up the connection's machine
+ *  and is answered with "OK"; any other line is a message, converted
+ *  from the connection's current machine state and answered with the
+ *  result, formatted as Main would print it.  As in Main, an empty
+ *  message line before the first settings line is answered with an
+ *  empty line.  A line that cannot be handled, including a message
+ *  line of more than MAX_LINE characters, is answered with "ERROR" and
+ *  a description, and leaves the machine unchanged.  Every request
+ *  line gets exactly one reply line, so clients may pipeline
+ *  requests.
+ *
+ *  Each connection is served on its own thread: a virtual thread when
+ *  the running Java supports them, and otherwise a platform thread.
+ *  @author Melissa Ly
+ */
+class Server {
+
+    /** A server on localhost port PORT (0 for any free port) for
+     *  machines built to SPEC.  Settings lines are applied with
+     *  CONFIGURE, and replies separate groups of five characters with
+     *  blanks iff GROUPED. */
+    Server(MachineSpec spec, int port, BiConsumer<Machine, String> configure,
+           boolean grouped) {
+        _spec = spec;
+        _configure = configure;
+        _grouped = grouped;
+        try {
+            _channel = ServerSocketChannel.open();
+            _channel.bind(new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), port), BACKLOG);
+        } catch (IOException excp) {
+            throw error("could not listen on port %d: %s", port,
+                        excp.getMessage());
+        }
+    }
+
+    /** Return the port on which I listen. */
+    int port() {
+        return _channel.socket().getLocalPort();
+    }
+
+    /** Accept and serve connections until I am closed. */
+    void run() {
+        ExecutorService connections = newConnectionExecutor();
+        try {
+            while (true) {
+                SocketChannel client = _channel.accept();
+                connections.execute(() -> serve(client));
+            }
+        } catch (ClosedChannelException excp) {
+            return;
+        } catch (IOException excp) {
+            throw error("could not accept connection: %s",
+                        excp.getMessage());
+        } finally {
+            connections.shutdownNow();
+        }
+    }
+
+    /** Stop accepting connections. */
+    void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Answer the requests on CLIENT until it closes its end. */
+    private void serve(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            MessageReader in = new MessageReader(channel);
+            in.setUpperCase(!_spec.alphabet().hasLowerCase());
+            MessageWriter out = new MessageWriter(channel, _grouped);
+            Machine machine = null;
+            char[] text = new char[LINE_BUFFER];
+            while (in.nextLine()) {
+                try {
+                    if (in.isSettings()) {
+                        Machine next =
+                            machine == null ? _spec.newMachine()
+                            : machine.copy();
+                        _configure.accept(next, in.rest());
+                        machine = next;
+                        out.writeLine(OK);
+                    } else {
+                        int len = 0, n;
+                        boolean tooLong = false;
+                        while ((n = in.read(text, len, text.length - len))
+                               >= 0) {
+                            len += n;
+                            if (len < text.length) {
+                                continue;
+                            } else if (len > MAX_LINE) {
+                                tooLong = true;
+                                len = 0;
+                            } else {
+                                char[] larger =
+                                    new char[Math.min(2 * len, MAX_LINE + 1)];
+                                System.arraycopy(text, 0, larger, 0, len);
+                                text = larger;
+                            }
+                        }
+                        if (tooLong) {
+                            throw error("line longer than %d characters",
+                                        MAX_LINE);
+                        }
+                        if (machine == null) {
+                            if (len > 0) {
+                                throw error("no settings line yet");
+                            }
+                            out.endLine();
+                        } else {
+                            for (int i = 0; i < len; i += 1) {
+                                if (!_spec.alphabet().contains(text[i])) {
+                                    throw error(
+                                        "'%c' is not in the alphabet",
+                                        text[i]);
+                                }
+                            }
+                            Metrics.message();
+                            machine.convert(text, 0, text, 0, len);
+                            out.write(text, 0, len);
+                            out.endLine();
+                        }
+                    }
+                } catch (EnigmaException excp) {
+                    out.writeLine("ERROR " + excp.getMessage());
+                }
+                out.flush();
+            }
+        } catch (IOException | EnigmaException excp) {
+            return;
+        }
+    }
+
+    /** Return an executor that runs each task on a new virtual thread,
+     *  if this Java supports them, and otherwise on a daemon platform
+     *  thread. */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "enigma-connection");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /** Reply to a settings line. */
+    static final String OK = "OK";
+
+    /** Maximum number of pending connections. */
+    private static final int BACKLOG = 1024;
+
+    /** Initial size of the buffer holding a message line. */
+    private static final int LINE_BUFFER = 1 << 12;
+
+    /** Maximum number of characters in a message line, which bounds
+     *  the memory a client can make me hold. */
+    static final int MAX_LINE = 1 << 20;
+
+    /** Spec to which connections' machines are built. */
+    private final MachineSpec _spec;
+    /** Applies a settings line to a machine. */
+    private final BiConsumer<Machine, String> _configure;
+    /** True iff replies are broken into groups of five. */
+    private final boolean _grouped;
+    /** The listening socket. */
+    private final ServerSocketChannel _channel;
+}
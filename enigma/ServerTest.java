@@ -0,0 +1,74 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author Melissa Ly
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void testServer() throws Exception {
+        MachineSpec spec = navalMachine("AAAA", "").spec();
+        Server server = new Server(spec, 0, (m, line) -> {
+            String[] words = line.substring(1).trim().split("\\s+");
+            m.insertRotors(Arrays.copyOf(words, 5));
+            m.setRotors(words[5]);
+        }, false);
+        Thread serving = new Thread(server::run);
+        serving.start();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        server.port())) {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                    socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), StandardCharsets.UTF_8));
+            out.println("");
+            assertEquals("", in.readLine());
+            out.println("hello");
+            assertTrue(in.readLine().startsWith("ERROR"));
+            out.println("* B Beta III IV I AXLE");
+            assertEquals(Server.OK, in.readLine());
+            out.println("hel lo");
+            out.println("world");
+            Machine expected = navalMachine("AXLE", "");
+            assertEquals(expected.convert("HELLO"), in.readLine());
+            assertEquals(expected.convert("WORLD"), in.readLine());
+            out.println("* B Beta III IV I AXL");
+            assertTrue(in.readLine().startsWith("ERROR"));
+            out.println("again");
+            assertEquals(expected.convert("AGAIN"), in.readLine());
+            char[] huge = new char[Server.MAX_LINE];
+            Arrays.fill(huge, 'A');
+            out.println(huge);
+            assertEquals(Server.MAX_LINE, in.readLine().length());
+            out.print('A');
+            out.println(huge);
+            assertTrue(in.readLine().startsWith("ERROR"));
+            out.println("more");
+            expected.convert(new String(huge));
+            assertEquals(expected.convert("MORE"), in.readLine());
+        } finally {
+            server.close();
+            serving.join();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A parsed settings line, such as "* B Beta III IV I AXLE (HQ) (EX)":
+ *  an asterisk, the names of the rotors (reflector first), optionally
+ *  their initial positions followed optionally by their ring settings,
+ *  and any plugboard cycles.  The positions token is recognized only if
+ *  it has one character per rotor slot after the reflector's; parsing
+ *  stops at the first token that is none of the above, and the rest of
+ *  the line is ignored.  Main, Server and BatchConverter all read their
+ *  settings lines this way.
+ *  @author Melissa Ly
+ */
+final class Settings {
+
+    /** The settings on LINE for a machine with NUMROTORS rotor slots. */
+    private Settings(int numRotors, String line) {
+        String[] tokens =
+            line.trim().replaceFirst("^[*]", "* ").split("\\s+");
+        if (!tokens[0].equals("*")) {
+            throw error("settings line must start with *");
+        }
+        if (tokens.length < numRotors + 1) {
+            throw error("Not enough rotors passed.");
+        }
+        _rotors = new String[numRotors];
+        System.arraycopy(tokens, 1, _rotors, 0, numRotors);
+        int k = numRotors + 1;
+        if (k < tokens.length
+            && tokens[k].matches("[^(]\\S{" + (numRotors - 2) + "}")) {
+            _positions = tokens[k];
+            k += 1;
+            if (k < tokens.length && tokens[k].matches("[^(]\\S*")) {
+                _rings = tokens[k];
+                k += 1;
+            } else {
+                _rings = null;
+            }
+        } else {
+            _positions = _rings = null;
+        }
+        StringBuilder plugboard = new StringBuilder();
+        for (; k < tokens.length && tokens[k].matches("[(][^()]+[)]");
+             k += 1) {
+            if (plugboard.length() > 0) {
+                plugboard.append(' ');
+            }
+            plugboard.append(tokens[k]);
+        }
+        _plugboard = plugboard.length() == 0 ? null : plugboard.toString();
+    }
+
+    /** Return the settings on LINE for a machine with NUMROTORS rotor
+     *  slots. */
+    static Settings parse(int numRotors, String line) {
+        return new Settings(numRotors, line);
+    }
+
+    /** Return the name of the rotor for SLOT (0 for the reflector). */
+    String rotor(int slot) {
+        return _rotors[slot];
+    }
+
+    /** Return the initial positions, or null if none were given. */
+    String positions() {
+        return _positions;
+    }
+
+    /** Return the ring settings, or null if none were given. */
+    String rings() {
+        return _rings;
+    }
+
+    /** Return the plugboard cycles, separated by blanks, or null if
+     *  none were given. */
+    String plugboard() {
+        return _plugboard;
+    }
+
+    /** Insert my rotors in M, at the first position of M's alphabet and
+     *  with my ring settings, and set M's plugboard to mine if I have
+     *  one.  Otherwise, M keeps its plugboard. */
+    void wire(Machine M) {
+        M.insertRotors(_rotors);
+        M.setRotors(M.settings());
+        if (_rings != null) {
+            M.setRings(_rings);
+        }
+        if (_plugboard != null) {
+            M.setPlugboard(new Permutation(_plugboard,
+                                           M.spec().alphabet()));
+        }
+    }
+
+    /** Set M up as I describe: wire it, and then set its rotors to my
+     *  positions, if I have any. */
+    void apply(Machine M) {
+        wire(M);
+        if (_positions != null) {
+            M.setRotors(_positions);
+        }
+    }
+
+    /** Names of the rotors, reflector first. */
+    private final String[] _rotors;
+    /** Initial positions, or null. */
+    private final String _positions;
+    /** Ring settings, or null. */
+    private final String _rings;
+    /** Plugboard cycles, or null. */
+    private final String _plugboard;
+}
@@ -0,0 +1,67 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Settings class.
+ *  @author Melissa Ly
+ */
+public class SettingsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testParse() {
+        Settings s =
+            Settings.parse(5, "*B Beta III IV I AXLE SLBE (HQ) (EX) junk (AB)");
+        assertEquals("B", s.rotor(0));
+        assertEquals("I", s.rotor(4));
+        assertEquals("AXLE", s.positions());
+        assertEquals("SLBE", s.rings());
+        assertEquals("(HQ) (EX)", s.plugboard());
+
+        s = Settings.parse(5, "* B Beta III IV I");
+        assertNull(s.positions());
+        assertNull(s.rings());
+        assertNull(s.plugboard());
+
+        s = Settings.parse(5, "* B Beta III IV I AXL (HQ)");
+        assertNull(s.positions());
+        assertNull(s.plugboard());
+
+        s = Settings.parse(5, "* B Beta III IV I (HQ)(EX) (AB)");
+        assertNull(s.positions());
+        assertNull(s.plugboard());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTooFewRotors() {
+        Settings.parse(5, "* B Beta III IV");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNoAsterisk() {
+        Settings.parse(5, "B Beta III IV I AXLE");
+    }
+
+    @Test
+    public void testApply() {
+        Machine M = navalMachine("AAAA", "(QR)");
+        Settings.parse(5, "* B Beta III IV I AXLE (HQ) (EX)").apply(M);
+        String msg = randomMessage(UPPER, 100);
+        assertEquals(navalMachine("AXLE", "(HQ) (EX)").convert(msg),
+                     M.convert(msg));
+
+        M = navalMachine("AAAA", "(HQ)");
+        Settings.parse(5, "* B Beta III IV I AXLE").apply(M);
+        assertEquals("plugboard carries over",
+                     navalMachine("AXLE", "(HQ)").convert(msg),
+                     M.convert(msg));
+    }
+}
@@ -1,6 +1,9 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -126,4 +129,79 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** Return a machine with the naval rotors I-V, BETA, GAMMA, B and C,
+     *  holding B BETA III IV I set to SETTING with plugboard PLUGS. */
+    static Machine navalMachine(String setting, String plugs) {
+        Alphabet alpha = UPPER;
+        HashSet<Rotor> rotors = new HashSet<>();
+        String[] moving = {"I", "II", "III", "IV", "V"};
+        String notches = "QEVJZ";
+        for (int i = 0; i < moving.length; i += 1) {
+            rotors.add(new MovingRotor(moving[i],
+                    new Permutation(NAVALA.get(moving[i]), alpha),
+                    notches.substring(i, i + 1)));
+        }
+        rotors.add(new FixedRotor("Beta",
+                new Permutation(NAVALA.get("Beta"), alpha)));
+        rotors.add(new FixedRotor("Gamma",
+                new Permutation(NAVALA.get("Gamma"), alpha)));
+        rotors.add(new Reflector("B",
+                new Permutation(NAVALA.get("B"), alpha)));
+        rotors.add(new Reflector("C",
+                new Permutation(NAVALA.get("C"), alpha)));
+        Machine machine = new Machine(alpha, 5, 3, rotors);
+        machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        machine.setRotors(setting);
+        machine.setPlugboard(new Permutation(plugs, alpha));
+        return machine;
+    }
+
+    /** Return a random message of LEN characters from ALPHA. */
+    static String randomMessage(Alphabet alpha, int len) {
+        Random random = new Random(len);
+        char[] msg = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            msg[i] = alpha.toChar(random.nextInt(alpha.size()));
+        }
+        return new String(msg);
+    }
+
+    /** Return a spec with four slots, three pawls, the naval rotors I-IV
+     *  and reflectors B and C. */
+    static MachineSpec smallSpec() {
+        Alphabet alpha = UPPER;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] moving = {"I", "II", "III", "IV"};
+        String notches = "QEVJ";
+        for (int i = 0; i < moving.length; i += 1) {
+            rotors.add(new MovingRotor(moving[i],
+                    new Permutation(NAVALA.get(moving[i]), alpha),
+                    notches.substring(i, i + 1)));
+        }
+        rotors.add(new Reflector("B",
+                new Permutation(NAVALA.get("B"), alpha)));
+        rotors.add(new Reflector("C",
+                new Permutation(NAVALA.get("C"), alpha)));
+        return new MachineSpec(alpha, 4, 3, rotors);
+    }
+
+    /** Return a spec with PAWLS + 1 slots (1 <= PAWLS <= 8), PAWLS pawls,
+     *  the naval rotors I-VIII and reflectors B and C, so that every
+     *  slot after the reflector holds a moving rotor. */
+    static MachineSpec pawlSpec(int pawls) {
+        Alphabet alpha = UPPER;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] moving = {"I", "II", "III", "IV", "V", "VI", "VII", "VIII"};
+        String[] notches = {"Q", "E", "V", "J", "Z", "ZM", "ZM", "ZM"};
+        for (int i = 0; i < moving.length; i += 1) {
+            rotors.add(new MovingRotor(moving[i],
+                    new Permutation(NAVALA.get(moving[i]), alpha),
+                    notches[i]));
+        }
+        rotors.add(new Reflector("B",
+                new Permutation(NAVALA.get("B"), alpha)));
+        rotors.add(new Reflector("C",
+                new Permutation(NAVALA.get("C"), alpha)));
+        return new MachineSpec(alpha, pawls + 1, pawls, rotors);
+    }
 }
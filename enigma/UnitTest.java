@@ -10,8 +10,13 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class,
-                MovingRotorTest.class, MachineTest.class);
+        textui.runClasses(AlphabetTest.class, PermutationTest.class,
+                MovingRotorTest.class, MachineTest.class,
+                MessageReaderTest.class, MessageWriterTest.class,
+                PipelineTest.class, MetricsTest.class, BatchConverterTest.class,
+                ServerTest.class, LaneConverterTest.class, KeySearchTest.class,
+                CribSolverTest.class, PlugboardClimberTest.class,
+                NGramTableTest.class, SettingsTest.class);
     }
 
 }